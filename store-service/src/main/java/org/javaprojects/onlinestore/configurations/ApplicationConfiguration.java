@@ -69,13 +69,6 @@ public class ApplicationConfiguration {
                     .serializeValuesWith(
                         RedisSerializationContext.SerializationPair.fromSerializer(
                             new GenericJackson2JsonRedisSerializer(objectMapper))
-            ))
-            .withCacheConfiguration("itemsSize",
-                RedisCacheConfiguration.defaultCacheConfig()
-                    .entryTtl(Duration.ofMinutes(10))
-                    .serializeValuesWith(
-                        RedisSerializationContext.SerializationPair.fromSerializer(
-                            new GenericJackson2JsonRedisSerializer(objectMapper))
             ));
     }
 
@@ -60,7 +60,9 @@ public class SecurityConfiguration
 
             .authorizeExchange(ex -> ex
                 .pathMatchers("/login", "/register", "/auth/register").permitAll()
-                .pathMatchers(HttpMethod.GET, "/", "/main/items/**", "/items/**", "/images/**").permitAll()
+                .pathMatchers(HttpMethod.GET, "/", "/main/items/**", "/items/**", "/images/**", "/api/items/**").permitAll()
+                .pathMatchers("/actuator/health/**").permitAll()
+                .pathMatchers("/api/admin/**", "/actuator/**").hasRole("ADMIN")
                 .anyExchange().authenticated()
             )
 
@@ -0,0 +1,79 @@
+package org.javaprojects.onlinestore.controllers;
+
+import org.javaprojects.onlinestore.enums.ImportFormat;
+import org.javaprojects.onlinestore.models.ImportStatus;
+import org.javaprojects.onlinestore.services.CatalogImporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * This class is used to import items into the catalog in bulk.
+ * It is available to administrators only.
+ */
+@RestController
+@RequestMapping("/api/admin/imports")
+@PreAuthorize("hasRole('ADMIN')")
+public class AdminImportController {
+
+    private static final String FAILED = "FAILED";
+    private static final Logger log = LoggerFactory.getLogger(AdminImportController.class);
+    private final CatalogImporter catalogImporter;
+
+    public AdminImportController(CatalogImporter catalogImporter) {
+        this.catalogImporter = catalogImporter;
+    }
+
+    /**
+     * This method is used to import items streamed in the request body, one item per line.
+     * The response is sent once the whole body is imported or the import fails.
+     * @param lines lines of the request body
+     * @param format format of the lines, CSV or NDJSON
+     * @param jobId ID of a failed job to resume with the same input, optional
+     * @return status of the import job, with 422 if the input is invalid and 500 if the import failed otherwise,
+     * the body keeps the job ID to resume the job
+     */
+    @PostMapping
+    public Mono<ResponseEntity<ImportStatus>> importItems(
+            @RequestBody Flux<String> lines,
+            @RequestParam(value = "format", defaultValue = "CSV") ImportFormat format,
+            @RequestParam(value = "job", required = false) Long jobId) {
+        log.debug("Starting import. Format: {}, job: {}", format, jobId);
+        return catalogImporter.importItems(lines, format, jobId)
+            .map(status -> ResponseEntity.status(httpStatus(status)).body(status))
+            .onErrorMap(IllegalStateException.class, e -> new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage()));
+    }
+
+    /**
+     * This method is used to get the progress of an import job.
+     * @param id id of the job
+     * @return status of the job or 404 if it does not exist
+     */
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<ImportStatus>> getStatus(@PathVariable("id") long id) {
+        return catalogImporter.status(id)
+            .map(ResponseEntity::ok)
+            .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    private static HttpStatus httpStatus(ImportStatus status) {
+        if (!FAILED.equals(status.status())) {
+            return HttpStatus.OK;
+        }
+        return status.error() != null && status.error().startsWith(CatalogImporter.INVALID_ITEM)
+            ? HttpStatus.UNPROCESSABLE_ENTITY
+            : HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+}
@@ -0,0 +1,81 @@
+package org.javaprojects.onlinestore.controllers;
+
+import org.javaprojects.onlinestore.models.ItemModel;
+import org.javaprojects.onlinestore.models.ItemRequest;
+import org.javaprojects.onlinestore.services.ItemAdminService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+
+/**
+ * This class is used to manage the items of the catalog.
+ * It is available to administrators only.
+ */
+@RestController
+@RequestMapping("/api/admin/items")
+@PreAuthorize("hasRole('ADMIN')")
+public class AdminItemsController {
+
+    private static final int MAX_ITEMS = 500;
+    private static final Logger log = LoggerFactory.getLogger(AdminItemsController.class);
+    private final ItemAdminService itemAdminService;
+
+    public AdminItemsController(ItemAdminService itemAdminService) {
+        this.itemAdminService = itemAdminService;
+    }
+
+    /**
+     * This method is used to create and update items in bulk.
+     * Items without an ID are created, items with an ID are created or replaced.
+     * @param items items to save, at most 500
+     * @return saved items with their IDs and versions
+     */
+    @PutMapping
+    public Flux<ItemModel> upsertItems(@RequestBody List<ItemRequest> items) {
+        log.debug("Saving items: {}", items.size());
+        if (items.size() > MAX_ITEMS) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_ITEMS + " items are allowed"));
+        }
+        if (!items.stream().allMatch(AdminItemsController::isValid)) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "Every item needs a title, a description, an image path and a price that is not negative"));
+        }
+        return itemAdminService.upsertItems(items);
+    }
+
+    /**
+     * This method is used to delete items in bulk.
+     * @param ids IDs of the items, at most 500
+     * @return IDs of the deleted items, unknown IDs are skipped
+     */
+    @DeleteMapping
+    public Flux<Long> deleteItems(@RequestParam("ids") List<Long> ids) {
+        log.debug("Deleting items: {}", ids);
+        if (ids.size() > MAX_ITEMS) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_ITEMS + " ids are allowed"));
+        }
+        return itemAdminService.deleteItems(ids);
+    }
+
+    /**
+     * Checks an item before it is written: a title, a description, an image path and a price that is not negative.
+     */
+    private static boolean isValid(ItemRequest item) {
+        return item != null
+            && item.title() != null && !item.title().isBlank()
+            && item.description() != null
+            && item.price() != null && item.price().signum() >= 0
+            && item.imgPath() != null && !item.imgPath().isBlank();
+    }
+}
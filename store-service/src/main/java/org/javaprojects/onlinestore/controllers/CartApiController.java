@@ -0,0 +1,85 @@
+package org.javaprojects.onlinestore.controllers;
+
+import org.javaprojects.onlinestore.models.CartChange;
+import org.javaprojects.onlinestore.models.CartContents;
+import org.javaprojects.onlinestore.security.AuthUser;
+import org.javaprojects.onlinestore.services.CatalogService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * This class is used to change the cart of the current user in bulk as JSON,
+ * e.g. to reorder a previous order or to add a bundle of items.
+ */
+@RestController
+@RequestMapping("/api/cart")
+@PreAuthorize("isAuthenticated()")
+public class CartApiController {
+
+    private static final int MAX_CHANGES = 500;
+    private static final Logger log = LoggerFactory.getLogger(CartApiController.class);
+    private final CatalogService catalogService;
+
+    public CartApiController(CatalogService catalogService) {
+        this.catalogService = catalogService;
+    }
+
+    /**
+     * This method is used to apply a batch of changes to the cart.
+     * Every change either adds a delta to the quantity of an item or sets its quantity, 0 removes the item.
+     * Items that are added must exist in the catalog, items already deleted can still be removed.
+     * @param changes changes applied in order, at most 500
+     * @param authUserMono authenticated user
+     * @return the resulting cart
+     */
+    @PostMapping("/items")
+    public Mono<CartContents> updateItems(@RequestBody List<CartChange> changes,
+            @AuthenticationPrincipal Mono<AuthUser> authUserMono) {
+        log.debug("Changing cart items: {}", changes.size());
+        if (changes.size() > MAX_CHANGES) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_CHANGES + " changes are allowed"));
+        }
+        if (!changes.stream().allMatch(CartApiController::isValid)) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                "Every change needs an item ID and either a delta or a quantity that is not negative"));
+        }
+        List<Long> addedIds = changes.stream()
+            .filter(CartApiController::addsItem)
+            .map(CartChange::itemId)
+            .toList();
+        return catalogService.findUnknownItemIds(addedIds)
+            .flatMap(unknown -> unknown.isEmpty()
+                ? authUserMono.flatMap(authUser -> catalogService.updateBasket(changes, authUser))
+                : Mono.error(new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown items: " + unknown)))
+            .onErrorMap(IllegalStateException.class, e -> new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage()));
+    }
+
+    /**
+     * Checks a change before it reaches Redis, a missing ID would be stored as a "null" field
+     * that the {@link org.javaprojects.onlinestore.services.CartFlusher} cannot persist.
+     */
+    private static boolean isValid(CartChange change) {
+        return change != null
+            && change.itemId() != null
+            && change.isComplete()
+            && (change.quantity() == null || change.quantity() >= 0);
+    }
+
+    /**
+     * Tells whether a change can put an item into the cart.
+     */
+    private static boolean addsItem(CartChange change) {
+        return change.quantity() != null ? change.quantity() > 0 : change.delta() > 0;
+    }
+}
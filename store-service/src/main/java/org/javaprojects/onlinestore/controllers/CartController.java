@@ -9,6 +9,7 @@ import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.thymeleaf.spring6.context.webflux.ReactiveDataDriverContextVariable;
 import reactor.core.publisher.Mono;
 
 /**
@@ -34,24 +35,22 @@ public class CartController {
     /**
      * This method is used to get all items in the basket and display them on the cart page.
      * It also checks if the payment service is available and calculates the total price of items.
+     * The total is summed up from the price index, so the items are streamed into the page while it renders.
      * @param model model
      * @return cart.html
      */
     @GetMapping("/items")
     public Mono<String> getItemsInBasket(Model model) {
         Mono<Boolean> payServiceUpMono = paymentHealthClient.isUp();
-       return catalogService.getItemsInBasket()
-           .collectList()
-           .zipWith(payServiceUpMono, (items, payServiceUp) -> {
-               double totalPrice =  items.stream()
-                   .mapToDouble(itemModel -> itemModel.getPrice().doubleValue() * itemModel.getCount())
-                   .sum();
+       return catalogService.getBasketSummary()
+           .zipWith(payServiceUpMono, (summary, payServiceUp) -> {
                model.addAttribute("paymentAvailable", payServiceUp);
-               model.addAttribute("items", items);
-               model.addAttribute("total", totalPrice);
-               model.addAttribute("empty", items.isEmpty());
+               model.addAttribute("items", new ReactiveDataDriverContextVariable(
+                   catalogService.getItemsInBasket(), 1));
+               model.addAttribute("total", summary.total());
+               model.addAttribute("empty", summary.isEmpty());
 
-               return items;
+               return summary;
            })
            .thenReturn("cart");
     }
@@ -0,0 +1,150 @@
+package org.javaprojects.onlinestore.controllers;
+
+import org.javaprojects.onlinestore.enums.Sorting;
+import org.javaprojects.onlinestore.models.CatalogQuery;
+import org.javaprojects.onlinestore.models.ItemModel;
+import org.javaprojects.onlinestore.models.ItemsPage;
+import org.javaprojects.onlinestore.models.Paging;
+import org.javaprojects.onlinestore.models.TitleSuggestion;
+import org.javaprojects.onlinestore.services.CatalogService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * This class is used to serve the catalog to machine clients as JSON.
+ * Pages are also available as a stream of items in NDJSON.
+ */
+@RestController
+@RequestMapping("/api/items")
+public class CatalogApiController {
+
+    private static final int MAX_SUGGESTIONS = 50;
+    private static final int MAX_IDS = 500;
+    private static final Logger log = LoggerFactory.getLogger(CatalogApiController.class);
+    private final CatalogService catalogService;
+
+    public CatalogApiController(CatalogService catalogService) {
+        this.catalogService = catalogService;
+    }
+
+    /**
+     * This method is used to get a page of the catalog with its navigation.
+     * @param searchString search string
+     * @param sorting sorting type
+     * @param pageSize page size
+     * @param pageNumber page number
+     * @param cursor cursor of the page, takes precedence over the page number
+     * @param minPrice lowest price of the items, optional
+     * @param maxPrice highest price of the items, optional
+     * @return page of items
+     */
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ItemsPage> getItems(
+            @RequestParam(value = "search", defaultValue = "") String searchString,
+            @RequestParam(value = "sort", defaultValue = "NO") Sorting sorting,
+            @RequestParam(value = "pageSize", defaultValue = "10") int pageSize,
+            @RequestParam(value = "pageNumber", defaultValue = "0") int pageNumber,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "minPrice", required = false) BigDecimal minPrice,
+            @RequestParam(value = "maxPrice", required = false) BigDecimal maxPrice) {
+        CatalogQuery query = new CatalogQuery(searchString, sorting, pageSize, pageNumber, cursor, minPrice, maxPrice);
+        log.debug("Serving catalog page: {}", query);
+        return catalogService.findPage(query)
+            .flatMap(page -> catalogService.findAllItems(page.ids())
+                .collectList()
+                .zipWith(catalogService.getItemsCount(query), (items, total) -> new ItemsPage(items, new Paging(
+                    page.pageNumber(),
+                    pageSize,
+                    page.hasNext(),
+                    page.hasPrevious(),
+                    page.nextCursor(),
+                    page.previousCursor()
+                ), total)));
+    }
+
+    /**
+     * This method is used to stream the items of a catalog page one JSON document per line,
+     * each item is written as soon as it is hydrated.
+     * @param searchString search string
+     * @param sorting sorting type
+     * @param pageSize page size
+     * @param pageNumber page number
+     * @param cursor cursor of the page, takes precedence over the page number
+     * @param minPrice lowest price of the items, optional
+     * @param maxPrice highest price of the items, optional
+     * @return items of the page in display order
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ItemModel> streamItems(
+            @RequestParam(value = "search", defaultValue = "") String searchString,
+            @RequestParam(value = "sort", defaultValue = "NO") Sorting sorting,
+            @RequestParam(value = "pageSize", defaultValue = "10") int pageSize,
+            @RequestParam(value = "pageNumber", defaultValue = "0") int pageNumber,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "minPrice", required = false) BigDecimal minPrice,
+            @RequestParam(value = "maxPrice", required = false) BigDecimal maxPrice) {
+        CatalogQuery query = new CatalogQuery(searchString, sorting, pageSize, pageNumber, cursor, minPrice, maxPrice);
+        log.debug("Streaming catalog page: {}", query);
+        return catalogService.findPage(query)
+            .flatMapMany(page -> catalogService.findAllItems(page.ids()));
+    }
+
+    /**
+     * This method is used to look up a batch of items by their IDs.
+     * Unknown IDs are skipped.
+     * @param ids IDs of the items, at most 500
+     * @return items in the order of the IDs
+     */
+    @GetMapping(params = "ids", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<ItemModel> getItemsByIds(@RequestParam("ids") List<Long> ids) {
+        log.debug("Looking up items by ids: {}", ids);
+        if (ids.size() > MAX_IDS) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_IDS + " ids are allowed"));
+        }
+        return catalogService.findAllItems(ids);
+    }
+
+    /**
+     * This method is used to get an item by its ID.
+     * @param id id of the item
+     * @return the item or 404 if it does not exist
+     */
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<ItemModel>> getItem(@PathVariable("id") long id) {
+        return catalogService.getItemById(id)
+            .map(ResponseEntity::ok)
+            .onErrorResume(IllegalStateException.class, e -> Mono.just(ResponseEntity.notFound().build()))
+            .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * This method is used to complete a title prefix for typeahead.
+     * @param prefix beginning of the title
+     * @param limit maximal number of completions, at most 50
+     * @return completions in title order, empty for a blank prefix
+     */
+    @GetMapping("/suggest")
+    public Mono<List<TitleSuggestion>> suggest(
+            @RequestParam(value = "q", defaultValue = "") String prefix,
+            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        log.debug("Suggesting titles for prefix: {}, limit: {}", prefix, limit);
+        if (prefix.isBlank() || limit <= 0) {
+            return Mono.just(List.of());
+        }
+        return catalogService.suggestTitles(prefix, Math.min(limit, MAX_SUGGESTIONS));
+    }
+}
@@ -2,23 +2,24 @@ package org.javaprojects.onlinestore.controllers;
 
 import org.javaprojects.onlinestore.enums.Action;
 import org.javaprojects.onlinestore.enums.Sorting;
-import org.javaprojects.onlinestore.models.AllItemsModel;
-import org.javaprojects.onlinestore.models.ItemModel;
+import org.javaprojects.onlinestore.models.CatalogPage;
+import org.javaprojects.onlinestore.models.CatalogQuery;
 import org.javaprojects.onlinestore.models.Paging;
 import org.javaprojects.onlinestore.security.AuthUser;
 import org.javaprojects.onlinestore.services.CatalogService;
+import org.javaprojects.onlinestore.services.ItemCardRenderer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.data.domain.PageImpl;
-import org.springframework.data.domain.PageRequest;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.thymeleaf.spring6.context.webflux.ReactiveDataDriverContextVariable;
 import reactor.core.publisher.Mono;
 
-import java.util.List;
+import java.math.BigDecimal;
+import java.util.Locale;
 
 /**
  * This class is used to handle all requests related to the catalog of items.
@@ -28,10 +29,12 @@ import java.util.List;
 public class CatalogController {
 
     private final CatalogService catalogService;
+    private final ItemCardRenderer itemCardRenderer;
     private static final Logger log = LoggerFactory.getLogger(CatalogController.class);
 
-    public CatalogController(CatalogService catalogService) {
+    public CatalogController(CatalogService catalogService, ItemCardRenderer itemCardRenderer) {
         this.catalogService = catalogService;
+        this.itemCardRenderer = itemCardRenderer;
     }
 
     /**
@@ -45,10 +48,17 @@ public class CatalogController {
 
     /**
      * This method is used to get all items from the database and display them on the main page.
+     * The page, its navigation and the number of found items are resolved first, the items are then
+     * hydrated while the page renders, so the head of the page is sent before the slowest item is loaded.
+     * The static part of every item card comes from {@link ItemCardRenderer}, only the cart count is rendered per request.
      * @param searchString search string
      * @param sorting sorting type
      * @param pageSize page size
      * @param pageNumber page number
+     * @param cursor cursor of the page, takes precedence over the page number
+     * @param minPrice lowest price of the items, optional
+     * @param maxPrice highest price of the items, optional
+     * @param locale locale of the request, used to format the item cards
      * @param model model
      * @return main.html
      */
@@ -58,31 +68,33 @@ public class CatalogController {
             @RequestParam(value = "sort", defaultValue = "NO") Sorting sorting,
             @RequestParam(value = "pageSize", defaultValue = "10") int pageSize,
             @RequestParam(value = "pageNumber", defaultValue = "0") int pageNumber,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "minPrice", required = false) BigDecimal minPrice,
+            @RequestParam(value = "maxPrice", required = false) BigDecimal maxPrice,
+            Locale locale,
             Model model) {
-        log.debug("Starting to fetch items with search: {}, sort: {}, pageSize: {}, pageNumber: {}",
-            searchString, sorting, pageSize, pageNumber);
-        return catalogService.findAllItems(pageNumber, pageSize, searchString, sorting)
-            .collectList()
-            .zipWith(catalogService.getItemsCount())
-            .map(tuple -> {
-                List<ItemModel> items = tuple.getT1();
-                // cache does not keep the long value, so we need to cast to Number at first then take a long value.
-                long totalPages = ((Number) tuple.getT2()).longValue();
-                PageRequest pageable = PageRequest.of(pageNumber, pageSize);
-                PageImpl<ItemModel> page = new PageImpl<>(items, pageable, totalPages);
-
-                return new AllItemsModel(items, new Paging(
-                    pageNumber,
+        log.debug("Starting to fetch items with search: {}, sort: {}, pageSize: {}, pageNumber: {}, cursor: {}, price: {}-{}",
+            searchString, sorting, pageSize, pageNumber, cursor, minPrice, maxPrice);
+        CatalogQuery query = new CatalogQuery(searchString, sorting, pageSize, pageNumber, cursor, minPrice, maxPrice);
+        return catalogService.findPage(query)
+            .zipWith(catalogService.getItemsCount(query))
+            .doOnNext(tuple -> {
+                CatalogPage page = tuple.getT1();
+                model.addAttribute("total", tuple.getT2());
+                model.addAttribute("items", new ReactiveDataDriverContextVariable(
+                    catalogService.findAllItems(page.ids()).map(item -> itemCardRenderer.render(item, locale)), 1));
+                model.addAttribute("paging", new Paging(
+                    page.pageNumber(),
                     pageSize,
                     page.hasNext(),
-                    page.hasPrevious()
+                    page.hasPrevious(),
+                    page.nextCursor(),
+                    page.previousCursor()
                 ));
-            })
-            .doOnNext(allItemsModel -> {
-                model.addAttribute("items", allItemsModel.getProductList());
-                model.addAttribute("paging", allItemsModel.getPaging());
                 model.addAttribute("search", searchString);
                 model.addAttribute("sort", sorting.name());
+                model.addAttribute("minPrice", minPrice);
+                model.addAttribute("maxPrice", maxPrice);
             })
             .then(Mono.just("main"));
     }
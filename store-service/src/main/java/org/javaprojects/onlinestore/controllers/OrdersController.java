@@ -10,10 +10,9 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.thymeleaf.spring6.context.webflux.ReactiveDataDriverContextVariable;
 import reactor.core.publisher.Mono;
 
-import java.util.List;
-
 /**
  * This class is used to handle all requests related to the orders of items.
  * It contains methods to get all orders, get order by id and buy items in the basket.
@@ -29,16 +28,18 @@ public class OrdersController {
 
     /**
      * This method is used to get all orders from the database and display them on the orders page.
+     * Orders are rendered one by one as they are loaded.
      * @param model model
      * @return orders.html
      */
     @GetMapping("/orders")
     public Mono<String> getOrders(Model model) {
-        return catalogService.findAllOrders()
-            .collectList()
-            .doOnNext(orders ->
-                model.addAttribute("orders", orders != null ? orders : List.of())
-            ).then(Mono.just("orders"));
+        return catalogService.hasOrders()
+            .doOnNext(hasOrders -> {
+                model.addAttribute("empty", !hasOrders);
+                model.addAttribute("orders", new ReactiveDataDriverContextVariable(
+                    catalogService.findAllOrders(), 1));
+            }).then(Mono.just("orders"));
     }
 
     /**
@@ -1,12 +1,14 @@
 package org.javaprojects.onlinestore.entities;
 
-import org.springframework.data.annotation.Id;
 import org.springframework.data.relational.core.mapping.Table;
 
+/**
+ * Row of the cart table, keyed by the user and the item.
+ * Rows are written by {@code CartRepository.saveQuantities} only, the entity carries no single-column ID.
+ */
 @Table(name = "cart")
 public class Cart {
 
-    @Id
     private Long itemId;
     private Long userId;
     private long quantity;
@@ -0,0 +1,115 @@
+package org.javaprojects.onlinestore.entities;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.time.Instant;
+
+@Table("import_jobs")
+public class ImportJob {
+    @Id
+    private Long id;
+
+    private String format;
+
+    private String status;
+
+    @Column("rows_committed")
+    private long rowsCommitted;
+
+    @Column("resumed_from")
+    private long resumedFrom;
+
+    @Column("started_at")
+    private Instant startedAt;
+
+    @Column("updated_at")
+    private Instant updatedAt;
+
+    @Column("finished_at")
+    private Instant finishedAt;
+
+    private String error;
+
+    public Long getId() {
+        return id;
+    }
+
+    public ImportJob setId(Long id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public ImportJob setFormat(String format) {
+        this.format = format;
+        return this;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public ImportJob setStatus(String status) {
+        this.status = status;
+        return this;
+    }
+
+    public long getRowsCommitted() {
+        return rowsCommitted;
+    }
+
+    public ImportJob setRowsCommitted(long rowsCommitted) {
+        this.rowsCommitted = rowsCommitted;
+        return this;
+    }
+
+    public long getResumedFrom() {
+        return resumedFrom;
+    }
+
+    public ImportJob setResumedFrom(long resumedFrom) {
+        this.resumedFrom = resumedFrom;
+        return this;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public ImportJob setStartedAt(Instant startedAt) {
+        this.startedAt = startedAt;
+        return this;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public ImportJob setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+        return this;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public ImportJob setFinishedAt(Instant finishedAt) {
+        this.finishedAt = finishedAt;
+        return this;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public ImportJob setError(String error) {
+        this.error = error;
+        return this;
+    }
+}
@@ -1,6 +1,7 @@
 package org.javaprojects.onlinestore.entities;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.ReadOnlyProperty;
 import org.springframework.data.relational.core.mapping.Table;
 
 import java.math.BigDecimal;
@@ -14,6 +15,8 @@ public class Item {
     private String description;
     private BigDecimal price;
     private String imgPath;
+    @ReadOnlyProperty
+    private Long version;
 
     public Item() {}
 
@@ -67,6 +70,16 @@ public class Item {
         return this;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public Item setVersion(Long version)
+    {
+        this.version = version;
+        return this;
+    }
+
     @Override
     public String toString()
     {
@@ -76,6 +89,7 @@ public class Item {
                 ", description='" + description + '\'' +
                 ", price=" + price +
                 ", imgPath='" + imgPath + '\'' +
+                ", version=" + version +
                 '}';
     }
 
@@ -0,0 +1,3 @@
+package org.javaprojects.onlinestore.enums;
+
+public enum ImportFormat {CSV, NDJSON}
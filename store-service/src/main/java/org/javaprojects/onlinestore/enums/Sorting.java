@@ -1,3 +1,3 @@
 package org.javaprojects.onlinestore.enums;
 
-public enum Sorting {NO, ALPHA, PRICE}
+public enum Sorting {NO, NEWEST, ALPHA, ALPHA_DESC, PRICE, PRICE_DESC, RELEVANCE}
@@ -0,0 +1,149 @@
+package org.javaprojects.onlinestore.infrastructure;
+
+import org.javaprojects.onlinestore.services.CatalogVersion;
+import org.javaprojects.onlinestore.services.LruCache;
+import org.reactivestreams.Publisher;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Caches the rendered catalog and item pages served to anonymous visitors.
+ * Anonymous visitors have no cart, so these pages only depend on the path, the query, the locale and the catalog version.
+ * The version is part of the key, so a change of the catalog makes every cached page unreachable at once.
+ * A request carrying a session cookie is treated as coming from a signed-in user and is never cached.
+ */
+@Component
+public class AnonymousPageCacheFilter implements WebFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(AnonymousPageCacheFilter.class);
+    private static final Pattern CACHED_PATHS = Pattern.compile("/main/items|/items/\\d+");
+    private static final String SESSION_COOKIE = "SESSION";
+
+    private record CachedPage(MediaType contentType, byte[] body) {}
+
+    private final CatalogVersion catalogVersion;
+    private final LruCache<String, CachedPage> pages;
+    private final boolean enabled;
+
+    public AnonymousPageCacheFilter(CatalogVersion catalogVersion,
+        @Value("${catalog.page-cache.enabled:true}") boolean enabled,
+        @Value("${catalog.page-cache.max-size:500}") int maxSize,
+        @Value("${catalog.page-cache.ttl:PT10M}") Duration ttl) {
+        this.catalogVersion = catalogVersion;
+        this.enabled = enabled;
+        this.pages = new LruCache<>(maxSize, ttl);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!enabled || !isCacheable(exchange.getRequest())) {
+            return chain.filter(exchange);
+        }
+        return catalogVersion.current()
+            .map(version -> Optional.of(version + " " + exchange.getLocaleContext().getLocale()
+                + " " + exchange.getRequest().getURI().getPath()
+                + "?" + exchange.getRequest().getURI().getRawQuery()))
+            .onErrorResume(e -> {
+                log.warn("Page cache bypassed, catalog version is unavailable", e);
+                return Mono.just(Optional.empty());
+            })
+            .defaultIfEmpty(Optional.empty())
+            .flatMap(key -> {
+                if (key.isEmpty()) {
+                    return chain.filter(exchange);
+                }
+                CachedPage page = pages.get(key.get());
+                if (page != null) {
+                    log.debug("Serving cached page: {}", key.get());
+                    return write(exchange.getResponse(), page);
+                }
+                return chain.filter(exchange.mutate()
+                    .response(new CapturingResponse(exchange.getResponse(), key.get()))
+                    .build());
+            });
+    }
+
+    private static boolean isCacheable(ServerHttpRequest request) {
+        return HttpMethod.GET.equals(request.getMethod())
+            && CACHED_PATHS.matcher(request.getURI().getPath()).matches()
+            && !request.getCookies().containsKey(SESSION_COOKIE)
+            && !request.getHeaders().containsKey(HttpHeaders.AUTHORIZATION);
+    }
+
+    private static Mono<Void> write(ServerHttpResponse response, CachedPage page) {
+        response.setStatusCode(HttpStatus.OK);
+        response.getHeaders().setContentType(page.contentType());
+        response.getHeaders().setContentLength(page.body().length);
+        return response.writeWith(Mono.fromSupplier(() -> response.bufferFactory().wrap(page.body())));
+    }
+
+    /**
+     * Copies the body of a successful response while it is written and caches it when it completes.
+     */
+    private class CapturingResponse extends ServerHttpResponseDecorator {
+
+        private final String key;
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        CapturingResponse(ServerHttpResponse delegate, String key) {
+            super(delegate);
+            this.key = key;
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            return super.writeWith(capture(body))
+                .doOnSuccess(done -> store());
+        }
+
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            return super.writeAndFlushWith(Flux.from(body).map(this::capture))
+                .doOnSuccess(done -> store());
+        }
+
+        private Flux<? extends DataBuffer> capture(Publisher<? extends DataBuffer> buffers) {
+            return Flux.from(buffers)
+                .doOnNext(buffer -> {
+                    ByteBuffer copy = ByteBuffer.allocate(buffer.readableByteCount());
+                    buffer.toByteBuffer(copy);
+                    synchronized (this.body) {
+                        this.body.write(copy.array(), 0, copy.limit());
+                    }
+                });
+        }
+
+        private void store() {
+            boolean ok = getStatusCode() == null || getStatusCode().isSameCodeAs(HttpStatus.OK);
+            MediaType contentType = getHeaders().getContentType();
+            if (!ok || contentType == null || getHeaders().containsKey(HttpHeaders.SET_COOKIE)) {
+                return;
+            }
+            synchronized (this.body) {
+                pages.put(key, new CachedPage(contentType, this.body.toByteArray()));
+            }
+            log.debug("Cached page: {}", key);
+        }
+    }
+}
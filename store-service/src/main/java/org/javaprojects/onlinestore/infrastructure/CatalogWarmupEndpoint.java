@@ -0,0 +1,44 @@
+package org.javaprojects.onlinestore.infrastructure;
+
+import org.javaprojects.onlinestore.models.WarmUpStatus;
+import org.javaprojects.onlinestore.services.CatalogWarmer;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator endpoint reporting the progress and throughput of the catalog cache warm-up.
+ * A POST to the endpoint starts a new warm-up in the background.
+ */
+@Component
+@Endpoint(id = "catalogwarmup")
+public class CatalogWarmupEndpoint {
+
+    private final CatalogWarmer warmer;
+
+    public CatalogWarmupEndpoint(CatalogWarmer warmer) {
+        this.warmer = warmer;
+    }
+
+    /**
+     * Returns the progress of the current or the last warm-up.
+     *
+     * @return status of the warm-up
+     */
+    @ReadOperation
+    public WarmUpStatus status() {
+        return warmer.status();
+    }
+
+    /**
+     * Starts the warm-up unless it is already running.
+     *
+     * @return status of the warm-up right after it was started
+     */
+    @WriteOperation
+    public WarmUpStatus warmUp() {
+        warmer.warmUp().subscribe();
+        return warmer.status();
+    }
+}
@@ -0,0 +1,35 @@
+package org.javaprojects.onlinestore.infrastructure;
+
+import org.javaprojects.onlinestore.models.WarmUpStatus;
+import org.javaprojects.onlinestore.services.CatalogWarmer;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.ReactiveHealthIndicator;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Reports the instance out of service until the catalog cache is warm.
+ * It is part of the readiness group, so new instances receive traffic only once they can serve it from Redis.
+ * A failed warm-up does not keep the instance out of service, the cache is then populated lazily.
+ */
+@Component
+public class CatalogWarmupHealthIndicator implements ReactiveHealthIndicator {
+
+    private final CatalogWarmer warmer;
+
+    public CatalogWarmupHealthIndicator(CatalogWarmer warmer) {
+        this.warmer = warmer;
+    }
+
+    @Override
+    public Mono<Health> health() {
+        WarmUpStatus status = warmer.status();
+        Health.Builder builder = warmer.isDisabled() || status.warm() || status.error() != null
+            ? Health.up()
+            : Health.outOfService();
+        return Mono.just(builder
+            .withDetail("itemsWritten", status.itemsWritten())
+            .withDetail("itemsPerSecond", status.itemsPerSecond())
+            .build());
+    }
+}
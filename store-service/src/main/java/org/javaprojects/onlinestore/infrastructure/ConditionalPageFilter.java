@@ -0,0 +1,103 @@
+package org.javaprojects.onlinestore.infrastructure;
+
+import org.javaprojects.onlinestore.services.CatalogService;
+import org.javaprojects.onlinestore.services.CatalogVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Answers conditional requests of anonymous visitors for the catalog and item pages.
+ * The item page is tagged with the version of the item and the catalog page with the version of the catalog,
+ * so a request with a matching If-None-Match header gets 304 before any item is hydrated or any template is rendered.
+ * Pages of signed-in users show their cart and are not tagged.
+ * The pages are rendered for the locale of the Accept-Language header, so tagged responses vary on it.
+ * Runs before {@link AnonymousPageCacheFilter}, so a not modified page is not even looked up in the page cache.
+ */
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class ConditionalPageFilter implements WebFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(ConditionalPageFilter.class);
+    private static final Pattern ITEM_PATH = Pattern.compile("/items/(\\d+)");
+    private static final String CATALOG_PATH = "/main/items";
+    private static final String SESSION_COOKIE = "SESSION";
+
+    private final CatalogService catalogService;
+    private final CatalogVersion catalogVersion;
+    private final boolean enabled;
+
+    public ConditionalPageFilter(CatalogService catalogService, CatalogVersion catalogVersion,
+        @Value("${catalog.etag.enabled:true}") boolean enabled) {
+        this.catalogService = catalogService;
+        this.catalogVersion = catalogVersion;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (!enabled || !isAnonymousGet(exchange.getRequest())) {
+            return chain.filter(exchange);
+        }
+        return etag(exchange.getRequest().getURI().getPath())
+            .map(Optional::of)
+            .onErrorResume(e -> {
+                log.debug("Page is not tagged: {}", e.getMessage());
+                return Mono.just(Optional.empty());
+            })
+            .defaultIfEmpty(Optional.empty())
+            .flatMap(etag -> {
+                if (etag.isEmpty()) {
+                    return chain.filter(exchange);
+                }
+                exchange.getResponse().getHeaders().setCacheControl(CacheControl.noCache());
+                exchange.getResponse().getHeaders().setVary(List.of(HttpHeaders.ACCEPT_LANGUAGE));
+                if (exchange.checkNotModified(etag.get())) {
+                    log.debug("Page is not modified: {}", etag.get());
+                    return exchange.getResponse().setComplete();
+                }
+                return chain.filter(exchange);
+            });
+    }
+
+    /**
+     * Builds the strong entity tag of the requested page.
+     * @param path Path of the request.
+     * @return Mono containing the entity tag, or empty if the page is not tagged.
+     */
+    private Mono<String> etag(String path) {
+        if (CATALOG_PATH.equals(path)) {
+            return catalogVersion.current()
+                .map(version -> "\"catalog-" + version + "\"");
+        }
+        Matcher item = ITEM_PATH.matcher(path);
+        if (item.matches()) {
+            long id = Long.parseLong(item.group(1));
+            return catalogService.getItemVersion(id)
+                .map(version -> "\"item-" + id + "-" + version + "\"");
+        }
+        return Mono.empty();
+    }
+
+    private static boolean isAnonymousGet(ServerHttpRequest request) {
+        return HttpMethod.GET.equals(request.getMethod())
+            && !request.getCookies().containsKey(SESSION_COOKIE)
+            && !request.getHeaders().containsKey(HttpHeaders.AUTHORIZATION);
+    }
+}
@@ -0,0 +1,162 @@
+package org.javaprojects.onlinestore.infrastructure;
+
+import io.r2dbc.postgresql.api.Notification;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.postgresql.api.PostgresqlResult;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import jakarta.annotation.PreDestroy;
+import org.javaprojects.onlinestore.repositories.ItemsRepository;
+import org.javaprojects.onlinestore.services.CacheLoader;
+import org.javaprojects.onlinestore.services.CatalogVersion;
+import org.javaprojects.onlinestore.services.CatalogWarmer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcConnectionDetails;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the Redis item cache in sync with changes made to the items table directly in the database.
+ * Triggers on the items table publish every insert, delete and content update on the {@code items_changed}
+ * channel as {@code OPERATION:id}. The listener holds a dedicated connection outside the pool, collects
+ * the notifications into small batches and applies each batch to the cache:
+ * changed items are reloaded and replace their hashes and index entries, deleted items are evicted,
+ * the item counter is recounted when items were inserted or deleted and the catalog version is bumped once per batch.
+ * Notifications sent while the connection is lost cannot be recovered, so after a reconnect the catalog is warmed up again;
+ * the warm-up rewrites changed items and evicts the deleted ones.
+ */
+@Component
+public class ItemChangeListener {
+
+    private static final Logger log = LoggerFactory.getLogger(ItemChangeListener.class);
+    private static final String CHANNEL = "items_changed";
+    private static final String INSERT = "INSERT";
+    private static final String DELETE = "DELETE";
+
+    private record ItemChange(String operation, long id) {}
+
+    private final R2dbcConnectionDetails connectionDetails;
+    private final ItemsRepository itemsRepository;
+    private final CacheLoader cacheLoader;
+    private final CatalogVersion catalogVersion;
+    private final CatalogWarmer catalogWarmer;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration batchWindow;
+    private final AtomicLong connections = new AtomicLong();
+    private Disposable subscription;
+
+    public ItemChangeListener(R2dbcConnectionDetails connectionDetails, ItemsRepository itemsRepository,
+        CacheLoader cacheLoader, CatalogVersion catalogVersion, CatalogWarmer catalogWarmer,
+        @Value("${catalog.change-listener.enabled:true}") boolean enabled,
+        @Value("${catalog.change-listener.batch-size:100}") int batchSize,
+        @Value("${catalog.change-listener.batch-window:PT0.2S}") Duration batchWindow) {
+        this.connectionDetails = connectionDetails;
+        this.itemsRepository = itemsRepository;
+        this.cacheLoader = cacheLoader;
+        this.catalogVersion = catalogVersion;
+        this.catalogWarmer = catalogWarmer;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.batchWindow = batchWindow;
+    }
+
+    /**
+     * Starts listening to the item changes once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        if (!enabled) {
+            return;
+        }
+        ConnectionFactory connectionFactory = ConnectionFactories.get(connectionDetails.getConnectionFactoryOptions());
+        subscription = Flux.usingWhen(connectionFactory.create(), this::listen, Connection::close)
+            .map(ItemChangeListener::parse)
+            .bufferTimeout(batchSize, batchWindow)
+            .concatMap(this::apply)
+            .doOnError(e -> log.warn("Items change notifications are lost, reconnecting", e))
+            .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+            .subscribe();
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    private Flux<Notification> listen(Connection connection) {
+        PostgresqlConnection postgres = (PostgresqlConnection) connection;
+        return postgres.createStatement("LISTEN " + CHANNEL)
+            .execute()
+            .flatMap(PostgresqlResult::getRowsUpdated)
+            .then(Mono.fromRunnable(this::onConnected))
+            .thenMany(postgres.getNotifications());
+    }
+
+    private void onConnected() {
+        log.info("Listening to items changes on channel {}", CHANNEL);
+        if (connections.getAndIncrement() > 0 && !catalogWarmer.isDisabled()) {
+            catalogWarmer.warmUp().subscribe();
+        }
+    }
+
+    private static ItemChange parse(Notification notification) {
+        String payload = notification.getParameter();
+        int delimiter = payload.indexOf(':');
+        return new ItemChange(payload.substring(0, delimiter), Long.parseLong(payload.substring(delimiter + 1)));
+    }
+
+    /**
+     * Applies a batch of changes to the cache.
+     * Only the last change of every item is applied.
+     *
+     * @param changes changes in the order they were committed
+     * @return Mono completing when the cache reflects the changes
+     */
+    private Mono<Void> apply(List<ItemChange> changes) {
+        Map<Long, ItemChange> latest = new LinkedHashMap<>();
+        boolean resized = false;
+        for (ItemChange change : changes) {
+            latest.remove(change.id());
+            latest.put(change.id(), change);
+            resized |= INSERT.equals(change.operation()) || DELETE.equals(change.operation());
+        }
+        log.debug("Applying items changes: {}", latest.values());
+        boolean recount = resized;
+        return Flux.fromIterable(latest.values())
+            .flatMap(this::applyChange)
+            .then(Mono.defer(() -> recount ? cacheLoader.refreshItemsCount().then() : Mono.<Void>empty()))
+            .then(Mono.defer(catalogVersion::bump))
+            .then()
+            .onErrorResume(e -> {
+                log.warn("Failed to apply items changes: {}", latest.values(), e);
+                return Mono.empty();
+            });
+    }
+
+    private Mono<Void> applyChange(ItemChange change) {
+        if (DELETE.equals(change.operation())) {
+            return cacheLoader.evict(change.id());
+        }
+        return itemsRepository.findById(change.id())
+            .flatMap(item -> cacheLoader.replace(item).thenReturn(true))
+            .switchIfEmpty(Mono.defer(() -> cacheLoader.evict(change.id()).thenReturn(false)))
+            .then();
+    }
+}
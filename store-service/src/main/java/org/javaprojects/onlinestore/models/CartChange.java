@@ -0,0 +1,29 @@
+package org.javaprojects.onlinestore.models;
+
+/**
+ * Change of the quantity of one item in the cart, either relative or absolute.
+ *
+ * @param itemId   ID of the item
+ * @param delta    amount to add to the quantity, negative to remove, null when the quantity is set
+ * @param quantity new quantity, 0 removes the item, null when the quantity is changed by the delta
+ */
+public record CartChange(
+    Long itemId,
+    Long delta,
+    Long quantity
+){
+    public static CartChange add(long itemId, long delta) {
+        return new CartChange(itemId, delta, null);
+    }
+
+    public static CartChange set(long itemId, long quantity) {
+        return new CartChange(itemId, null, quantity);
+    }
+
+    /**
+     * Checks that exactly one of the delta and the quantity is given.
+     */
+    public boolean isComplete() {
+        return (delta == null) != (quantity == null);
+    }
+}
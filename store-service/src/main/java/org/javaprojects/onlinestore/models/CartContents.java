@@ -0,0 +1,24 @@
+package org.javaprojects.onlinestore.models;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Cart of the current user with its items hydrated.
+ *
+ * @param items     items in the cart with their quantities
+ * @param positions number of different items in the cart
+ * @param total     total price of the items in the cart
+ */
+public record CartContents(
+    List<ItemModel> items,
+    int positions,
+    BigDecimal total
+){
+    public static CartContents of(List<ItemModel> items) {
+        BigDecimal total = items.stream()
+            .map(item -> item.getPrice().multiply(BigDecimal.valueOf(item.getCount())))
+            .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return new CartContents(items, items.size(), total);
+    }
+}
@@ -0,0 +1,16 @@
+package org.javaprojects.onlinestore.models;
+
+/**
+ * Totals of the cart of the current user.
+ *
+ * @param positions number of different items in the cart
+ * @param total     total price of the items in the cart
+ */
+public record CartSummary(
+    int positions,
+    double total
+){
+    public boolean isEmpty() {
+        return positions == 0;
+    }
+}
@@ -0,0 +1,22 @@
+package org.javaprojects.onlinestore.models;
+
+import java.util.List;
+
+/**
+ * IDs of the items on a catalog page together with the navigation to the neighbouring pages.
+ *
+ * @param ids            item IDs in display order
+ * @param pageNumber     number of the page
+ * @param hasNext        true if there is a next page
+ * @param hasPrevious    true if there is a previous page
+ * @param nextCursor     encoded cursor of the next page or null if the page is addressed by number
+ * @param previousCursor encoded cursor of the previous page or null if the page is addressed by number
+ */
+public record CatalogPage(
+    List<Long> ids,
+    int pageNumber,
+    boolean hasNext,
+    boolean hasPrevious,
+    String nextCursor,
+    String previousCursor
+){}
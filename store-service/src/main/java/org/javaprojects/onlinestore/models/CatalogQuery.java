@@ -0,0 +1,38 @@
+package org.javaprojects.onlinestore.models;
+
+import org.javaprojects.onlinestore.enums.Sorting;
+
+import java.math.BigDecimal;
+
+/**
+ * Parameters of a catalog page request.
+ *
+ * @param search     search string, blank for browsing
+ * @param sorting    sorting of the items
+ * @param pageSize   number of items per page
+ * @param pageNumber page number, used when there is no cursor
+ * @param cursor     encoded {@link PageCursor} of the requested page or null
+ * @param minPrice   inclusive lower bound of the price or null
+ * @param maxPrice   inclusive upper bound of the price or null
+ */
+public record CatalogQuery(
+    String search,
+    Sorting sorting,
+    int pageSize,
+    int pageNumber,
+    String cursor,
+    BigDecimal minPrice,
+    BigDecimal maxPrice
+){
+    public CatalogQuery(String search, Sorting sorting, int pageSize, int pageNumber, String cursor) {
+        this(search, sorting, pageSize, pageNumber, cursor, null, null);
+    }
+
+    /**
+     * Returns true if the items are filtered by price.
+     * @return true if any of the price bounds is set
+     */
+    public boolean hasPriceFilter() {
+        return minPrice != null || maxPrice != null;
+    }
+}
@@ -0,0 +1,32 @@
+package org.javaprojects.onlinestore.models;
+
+import org.javaprojects.onlinestore.entities.ImportJob;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Progress of a catalog import job.
+ *
+ * @param jobId         ID of the job, pass it back to resume the job
+ * @param status        RUNNING, DONE or FAILED
+ * @param rowsCommitted number of input rows committed to the database by all runs of the job
+ * @param resumedFrom   number of input rows skipped by the current or the last run
+ * @param startedAt     start of the current or the last run
+ * @param finishedAt    end of the last run, null while running
+ * @param rowsPerSecond throughput of the current or the last run
+ * @param error         message of the error the last run failed with, null if it succeeded
+ */
+public record ImportStatus(long jobId, String status, long rowsCommitted, long resumedFrom,
+                           Instant startedAt, Instant finishedAt, double rowsPerSecond, String error)
+{
+    public static ImportStatus of(ImportJob job) {
+        Instant end = job.getFinishedAt() != null ? job.getFinishedAt() : job.getUpdatedAt();
+        double seconds = job.getStartedAt() == null || end == null
+            ? 0
+            : Duration.between(job.getStartedAt(), end).toMillis() / 1000d;
+        long rows = job.getRowsCommitted() - job.getResumedFrom();
+        return new ImportStatus(job.getId(), job.getStatus(), job.getRowsCommitted(), job.getResumedFrom(),
+            job.getStartedAt(), job.getFinishedAt(), seconds > 0 ? rows / seconds : 0, job.getError());
+    }
+}
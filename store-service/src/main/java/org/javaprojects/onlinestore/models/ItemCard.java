@@ -0,0 +1,13 @@
+package org.javaprojects.onlinestore.models;
+
+/**
+ * Item card of the catalog page.
+ *
+ * @param item item with the cart count of the current user
+ * @param html rendered static part of the card, shared by all users
+ */
+public record ItemCard(
+    ItemModel item,
+    String html
+){
+}
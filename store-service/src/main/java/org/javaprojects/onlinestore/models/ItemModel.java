@@ -11,6 +11,7 @@ public class ItemModel {
     private BigDecimal price;
     private String imgPath;
     private long count;
+    private long version;
 
     public ItemModel() {
     }
@@ -22,6 +23,7 @@ public class ItemModel {
         this.price = item.getPrice();
         this.imgPath = item.getImgPath();
         this.count = count;
+        this.version = item.getVersion() == null ? 0 : item.getVersion();
     }
 
     public ItemModel(Long id, String title, String description, BigDecimal price, String imgPath, long count) {
@@ -93,12 +95,23 @@ public class ItemModel {
         return count;
     }
 
-    public ItemModel setCount(int count)
+    public ItemModel setCount(long count)
     {
         this.count = count;
         return this;
     }
 
+    public long getVersion()
+    {
+        return version;
+    }
+
+    public ItemModel setVersion(long version)
+    {
+        this.version = version;
+        return this;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,21 @@
+package org.javaprojects.onlinestore.models;
+
+import java.math.BigDecimal;
+
+/**
+ * Item sent to the admin API.
+ *
+ * @param id          ID of the item to update, null to create a new item
+ * @param title       title of the item
+ * @param description description of the item
+ * @param price       price of the item
+ * @param imgPath     path of the item image
+ */
+public record ItemRequest(
+    Long id,
+    String title,
+    String description,
+    BigDecimal price,
+    String imgPath
+){
+}
@@ -0,0 +1,16 @@
+package org.javaprojects.onlinestore.models;
+
+import java.util.List;
+
+/**
+ * Page of the catalog served to machine clients.
+ *
+ * @param items  items of the page in display order
+ * @param paging navigation to the neighbouring pages
+ * @param total  number of items matching the request
+ */
+public record ItemsPage(
+    List<ItemModel> items,
+    Paging paging,
+    long total
+){}
@@ -0,0 +1,80 @@
+package org.javaprojects.onlinestore.models;
+
+import org.javaprojects.onlinestore.enums.Sorting;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque position in a sorted catalog index.
+ * It keeps the member of the index next to which the page starts and its score,
+ * so the next page is found by seeking instead of skipping an offset.
+ *
+ * @param sort     sorting the cursor was created for
+ * @param member   boundary member of the index, {@code id} for price and {@code title|id} for title
+ * @param score    score of the boundary member
+ * @param backward true when the page ends before the member, false when it starts after it
+ */
+public record PageCursor(
+    Sorting sort,
+    String member,
+    double score,
+    boolean backward
+)
+{
+    private static final char SEPARATOR = ':';
+
+    public static PageCursor after(Sorting sort, String member, double score) {
+        return new PageCursor(sort, member, score, false);
+    }
+
+    public static PageCursor before(Sorting sort, String member, double score) {
+        return new PageCursor(sort, member, score, true);
+    }
+
+    /**
+     * Encodes the cursor into a URL safe token.
+     * @return encoded cursor
+     */
+    public String encode() {
+        String raw = sort.name() + SEPARATOR + (backward ? 'B' : 'A') + SEPARATOR + score + SEPARATOR + member;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor token.
+     * @param token encoded cursor, may be null or blank
+     * @return decoded cursor or null if the token is absent or malformed
+     */
+    public static PageCursor decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split(String.valueOf(SEPARATOR), 4);
+            if (parts.length != 4) {
+                return null;
+            }
+            return new PageCursor(Sorting.valueOf(parts[0]), parts[3], Double.parseDouble(parts[2]), "B".equals(parts[1]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Extracts the item ID from the boundary member.
+     * @return item ID
+     */
+    public long itemId() {
+        return Long.parseLong(member.substring(member.lastIndexOf('|') + 1));
+    }
+
+    /**
+     * Extracts the title from the boundary member of the title index.
+     * @return item title
+     */
+    public String title() {
+        return member.substring(0, Math.max(member.lastIndexOf('|'), 0));
+    }
+}
@@ -5,5 +5,7 @@ public record Paging
     int pageNumber,
     int pageSize,
     boolean hasNext,
-    boolean hasPrevious
+    boolean hasPrevious,
+    String nextCursor,
+    String previousCursor
 ){}
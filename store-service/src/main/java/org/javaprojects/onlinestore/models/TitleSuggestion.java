@@ -0,0 +1,12 @@
+package org.javaprojects.onlinestore.models;
+
+/**
+ * Completion of a title prefix.
+ *
+ * @param id    ID of the item
+ * @param title title of the item
+ */
+public record TitleSuggestion(
+    long id,
+    String title
+){}
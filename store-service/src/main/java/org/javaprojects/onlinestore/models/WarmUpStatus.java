@@ -0,0 +1,26 @@
+package org.javaprojects.onlinestore.models;
+
+import java.time.Instant;
+
+/**
+ * Progress of the catalog cache warm-up.
+ *
+ * @param running        true while the warm-up is streaming items into Redis
+ * @param itemsWritten   number of items written by the current or the last run
+ * @param startedAt      start of the current or the last run, null if the warm-up never ran
+ * @param finishedAt     end of the last run, null while running or if the warm-up never ran
+ * @param itemsPerSecond throughput of the current or the last run
+ * @param error          message of the error the last run failed with, null if it succeeded
+ */
+public record WarmUpStatus(boolean running, long itemsWritten, Instant startedAt, Instant finishedAt,
+                           double itemsPerSecond, String error)
+{
+    /**
+     * Returns true if a run has completed without an error.
+     *
+     * @return true if the cache is warm
+     */
+    public boolean warm() {
+        return !running && finishedAt != null && error == null;
+    }
+}
@@ -2,25 +2,38 @@ package org.javaprojects.onlinestore.repositories;
 
 
 import org.javaprojects.onlinestore.entities.Cart;
+import org.springframework.data.r2dbc.repository.Modifying;
 import org.springframework.data.r2dbc.repository.Query;
-import org.springframework.data.repository.reactive.ReactiveCrudRepository;
-import org.springframework.stereotype.Repository;
+import org.springframework.data.repository.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-@Repository
-public interface CartRepository extends ReactiveCrudRepository<Cart, Long> {
-    @Query("INSERT INTO cart (item_id, user_id, quantity) VALUES (:itemId, :userId, :quantity)")
-    Mono<Void> insertToCart(Long itemId, Long userId, Long quantity);
-
-    @Query("DELETE FROM cart WHERE item_id = :itemId AND user_id = :userId")
-    Mono<Void> removeFromCart(Long itemId, Long userId);
-
-    @Query("SELECT * FROM cart WHERE item_id = :itemId AND user_id = :userId")
-    Mono<Cart> findByItemIdAndUserId(Long itemId, Long userId);
-
+/**
+ * Cart rows are keyed by (user_id, item_id), so the repository exposes only explicit queries
+ * instead of the CRUD methods of a single-column ID.
+ */
+@org.springframework.stereotype.Repository
+public interface CartRepository extends Repository<Cart, Long> {
     @Query("SELECT * FROM cart WHERE user_id = :userId")
     Flux<Cart> findByUserId(Long userId);
 
+    @Modifying
+    @Query("DELETE FROM cart WHERE user_id = :userId")
     Mono<Void> deleteByUserId(Long userId);
+
+    @Query("""
+        WITH changed AS (
+            SELECT * FROM unnest(CAST(:userIds AS BIGINT[]), CAST(:itemIds AS BIGINT[]), CAST(:quantities AS BIGINT[]))
+                AS changed(user_id, item_id, quantity)
+        ), removed AS (
+            DELETE FROM cart USING changed
+            WHERE cart.user_id = changed.user_id AND cart.item_id = changed.item_id AND changed.quantity <= 0
+        )
+        INSERT INTO cart (user_id, item_id, quantity)
+        SELECT changed.user_id, changed.item_id, changed.quantity
+        FROM changed JOIN items ON items.id = changed.item_id
+        WHERE changed.quantity > 0
+        ON CONFLICT (user_id, item_id) DO UPDATE SET quantity = EXCLUDED.quantity
+        """)
+    Mono<Void> saveQuantities(Long[] userIds, Long[] itemIds, Long[] quantities);
 }
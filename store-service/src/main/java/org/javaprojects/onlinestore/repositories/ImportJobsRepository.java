@@ -0,0 +1,10 @@
+package org.javaprojects.onlinestore.repositories;
+
+import org.javaprojects.onlinestore.entities.ImportJob;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ImportJobsRepository extends ReactiveCrudRepository<ImportJob, Long>
+{
+}
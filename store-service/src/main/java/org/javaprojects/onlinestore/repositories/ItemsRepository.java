@@ -11,6 +11,9 @@ import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.math.BigDecimal;
+import java.util.Collection;
+
 @Repository
 public interface ItemsRepository extends ReactiveCrudRepository<Item, Long>
 {
@@ -24,6 +27,162 @@ public interface ItemsRepository extends ReactiveCrudRepository<Item, Long>
             """)
     Flux<Item> findBySearchString(@Param("search") String search, Pageable pageable);
 
+    /**
+     * Full-text search over the GIN-indexed search vector of title and description.
+     * Results are ordered by price, title or insertion when requested, otherwise by relevance.
+     * Null price bounds are not applied.
+     */
+    @Query("""
+            SELECT i.id, i.title, i.description, i.price, i.img_path, i.version FROM items AS i
+            WHERE i.search_vector @@ plainto_tsquery('simple', :search)
+            AND (CAST(:minPrice AS numeric) IS NULL OR i.price >= :minPrice)
+            AND (CAST(:maxPrice AS numeric) IS NULL OR i.price <= :maxPrice)
+            ORDER BY
+                CASE WHEN :sort = 'PRICE' THEN i.price END,
+                CASE WHEN :sort = 'PRICE_DESC' THEN i.price END DESC,
+                CASE WHEN :sort = 'ALPHA' THEN i.title END,
+                CASE WHEN :sort = 'ALPHA_DESC' THEN i.title END DESC,
+                CASE WHEN :sort = 'NEWEST' THEN i.id END DESC,
+                ts_rank(i.search_vector, plainto_tsquery('simple', :search)) DESC,
+                i.id
+            LIMIT :limit OFFSET :offset
+            """)
+    Flux<Item> findByFullText(@Param("search") String search, @Param("sort") String sort,
+        @Param("minPrice") BigDecimal minPrice, @Param("maxPrice") BigDecimal maxPrice,
+        @Param("limit") int limit, @Param("offset") long offset);
+
+    /**
+     * Counts the items found by {@link #findByFullText}. Null price bounds are not applied.
+     */
+    @Query("""
+            SELECT COUNT(*) FROM items AS i
+            WHERE i.search_vector @@ plainto_tsquery('simple', :search)
+            AND (CAST(:minPrice AS numeric) IS NULL OR i.price >= :minPrice)
+            AND (CAST(:maxPrice AS numeric) IS NULL OR i.price <= :maxPrice)
+            """)
+    Mono<Long> countByFullText(@Param("search") String search,
+        @Param("minPrice") BigDecimal minPrice, @Param("maxPrice") BigDecimal maxPrice);
+
+    /**
+     * Browsing within a price range, used while the price index in Redis may still be incomplete.
+     * Null price bounds are not applied.
+     */
+    @Query("""
+            SELECT i.id, i.title, i.description, i.price, i.img_path, i.version FROM items AS i
+            WHERE (CAST(:minPrice AS numeric) IS NULL OR i.price >= :minPrice)
+            AND (CAST(:maxPrice AS numeric) IS NULL OR i.price <= :maxPrice)
+            ORDER BY
+                CASE WHEN :sort = 'PRICE' THEN i.price END,
+                CASE WHEN :sort = 'PRICE_DESC' THEN i.price END DESC,
+                CASE WHEN :sort = 'ALPHA' THEN i.title END,
+                CASE WHEN :sort = 'ALPHA_DESC' THEN i.title END DESC,
+                CASE WHEN :sort = 'NEWEST' THEN i.id END DESC,
+                i.id
+            LIMIT :limit OFFSET :offset
+            """)
+    Flux<Item> findByPriceRange(@Param("sort") String sort,
+        @Param("minPrice") BigDecimal minPrice, @Param("maxPrice") BigDecimal maxPrice,
+        @Param("limit") int limit, @Param("offset") long offset);
+
+    /**
+     * Counts the items found by {@link #findByPriceRange}. Null price bounds are not applied.
+     */
+    @Query("""
+            SELECT COUNT(*) FROM items AS i
+            WHERE (CAST(:minPrice AS numeric) IS NULL OR i.price >= :minPrice)
+            AND (CAST(:maxPrice AS numeric) IS NULL OR i.price <= :maxPrice)
+            """)
+    Mono<Long> countByPriceRange(@Param("minPrice") BigDecimal minPrice, @Param("maxPrice") BigDecimal maxPrice);
+
+    @Query("""
+            SELECT i.id, i.title, i.description, i.price, i.img_path, i.version FROM items AS i
+            WHERE i.id > :id
+            ORDER BY i.id
+            LIMIT :limit
+            """)
+    Flux<Item> findPageAfterId(@Param("id") long id, @Param("limit") int limit);
+
+    @Query("""
+            SELECT i.id, i.title, i.description, i.price, i.img_path, i.version FROM items AS i
+            WHERE i.id < :id
+            ORDER BY i.id DESC
+            LIMIT :limit
+            """)
+    Flux<Item> findPageBeforeId(@Param("id") long id, @Param("limit") int limit);
+
+    @Query("""
+            SELECT i.id, i.title, i.description, i.price, i.img_path, i.version FROM items AS i
+            WHERE (i.price, i.id) > (:price, :id)
+            ORDER BY i.price, i.id
+            LIMIT :limit
+            """)
+    Flux<Item> findPageAfterPrice(@Param("price") BigDecimal price, @Param("id") long id, @Param("limit") int limit);
+
+    @Query("""
+            SELECT i.id, i.title, i.description, i.price, i.img_path, i.version FROM items AS i
+            WHERE (i.price, i.id) < (:price, :id)
+            ORDER BY i.price DESC, i.id DESC
+            LIMIT :limit
+            """)
+    Flux<Item> findPageBeforePrice(@Param("price") BigDecimal price, @Param("id") long id, @Param("limit") int limit);
+
+    @Query("""
+            SELECT i.id, i.title, i.description, i.price, i.img_path, i.version FROM items AS i
+            WHERE (i.title, i.id) > (:title, :id)
+            ORDER BY i.title, i.id
+            LIMIT :limit
+            """)
+    Flux<Item> findPageAfterTitle(@Param("title") String title, @Param("id") long id, @Param("limit") int limit);
+
+    @Query("""
+            SELECT i.id, i.title, i.description, i.price, i.img_path, i.version FROM items AS i
+            WHERE (i.title, i.id) < (:title, :id)
+            ORDER BY i.title DESC, i.id DESC
+            LIMIT :limit
+            """)
+    Flux<Item> findPageBeforeTitle(@Param("title") String title, @Param("id") long id, @Param("limit") int limit);
+
     @NonNull
     Mono<Long> count();
+
+    /**
+     * Inserts a new item and returns it with the generated ID and the initial version.
+     */
+    @Query("""
+            INSERT INTO items (title, description, price, img_path)
+            VALUES (:title, :description, :price, :imgPath)
+            RETURNING id, title, description, price, img_path, version
+            """)
+    Mono<Item> insertItem(@Param("title") String title, @Param("description") String description,
+        @Param("price") BigDecimal price, @Param("imgPath") String imgPath);
+
+    /**
+     * Inserts the item with the given ID or updates the existing one.
+     * The version is bumped by the trigger only when the content actually changes.
+     */
+    @Query("""
+            INSERT INTO items (id, title, description, price, img_path)
+            VALUES (:id, :title, :description, :price, :imgPath)
+            ON CONFLICT (id) DO UPDATE SET
+                title = EXCLUDED.title,
+                description = EXCLUDED.description,
+                price = EXCLUDED.price,
+                img_path = EXCLUDED.img_path
+            RETURNING id, title, description, price, img_path, version
+            """)
+    Mono<Item> upsertItem(@Param("id") long id, @Param("title") String title, @Param("description") String description,
+        @Param("price") BigDecimal price, @Param("imgPath") String imgPath);
+
+    /**
+     * Moves the ID sequence past the given explicit ID, so items inserted with explicit IDs do not collide
+     * with generated ones. The sequence is never moved backwards, IDs handed out to other transactions stay unused.
+     */
+    @Query("""
+            SELECT setval(pg_get_serial_sequence('items', 'id'), GREATEST(:id,
+                COALESCE(pg_sequence_last_value(CAST(pg_get_serial_sequence('items', 'id') AS regclass)), 1)))
+            """)
+    Mono<Long> syncIdSequence(@Param("id") long id);
+
+    @Query("DELETE FROM items WHERE id IN (:ids) RETURNING id")
+    Flux<Long> deleteByIds(@Param("ids") Collection<Long> ids);
 }
@@ -3,119 +3,357 @@ package org.javaprojects.onlinestore.services;
 import org.javaprojects.onlinestore.entities.Cart;
 import org.javaprojects.onlinestore.entities.Item;
 import org.javaprojects.onlinestore.enums.Sorting;
+import org.javaprojects.onlinestore.models.PageCursor;
 import org.javaprojects.onlinestore.repositories.CartRepository;
 import org.javaprojects.onlinestore.repositories.ItemsRepository;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 
 /**
  * CacheLoader is responsible for loading items and cart counts into Redis cache.
  * It interacts with the ItemsRepository and CartRepository to fetch data
  * and store it in Redis for quick access.
+ * The item scripts update the item hash, its tombstone and the shared sorted indexes in one call,
+ * so the catalog keys must live on a single Redis node; only the cart keys are hash-tagged per user.
  */
 @Component
 public class CacheLoader
 {
     private static final String KEY_ITEM        = "item:%d";
-    private static final String KEY_CART_COUNT  = "count:%d:%d";
+    private static final String KEY_CART        = "cart:{%d}";
+    private static final String KEY_CART_DIRTY  = "cart:{%d}:dirty";
+    private static final String KEY_CART_EPOCH  = "cart:{%d}:epoch";
+    private static final String CART_LOADED     = "loaded";
     private static final String ID              = "id";
     private static final String TITLE           = "title";
     private static final String DESCRIPTION     = "description";
     private static final String PRICE           = "price";
     private static final String IMG             = "img";
+    private static final String VERSION         = "version";
     private static final String Z_PRICE         = "z:price";
     private static final String Z_TITLE         = "z:title";
+    private static final String Z_NEW           = "z:new";
+    private static final String KEY_TERM        = "idx:term:%s";
+    private static final String KEY_ITEMS_COUNT = "catalog:size";
+    private static final String KEY_CATALOG_WARM = "catalog:warm";
+    private static final String KEY_LEASE       = "lease:%s";
+    private static final String KEY_MISSING     = "missing:item:%d";
     public static final char KEY_DELIMITER      = '|';
+    private static final RedisScript<Long> RELEASE_LEASE = RedisScript.of(
+        "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0",
+        Long.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> REPLACE_ITEM = RedisScript.of("""
+        local previous = redis.call('HMGET', KEYS[1], 'title', 'description', 'version')
+        if previous[3] and tonumber(previous[3]) > tonumber(ARGV[6]) then
+            return {'-1'}
+        end
+        if previous[1] and previous[1] ~= ARGV[2] then
+            redis.call('ZREM', KEYS[3], previous[1] .. ARGV[7] .. ARGV[1])
+        end
+        redis.call('HSET', KEYS[1], 'id', ARGV[1], 'title', ARGV[2], 'description', ARGV[3],
+            'price', ARGV[4], 'img', ARGV[5], 'version', ARGV[6])
+        redis.call('ZADD', KEYS[2], ARGV[4], ARGV[1])
+        redis.call('ZADD', KEYS[3], 0, ARGV[2] .. ARGV[7] .. ARGV[1])
+        redis.call('ZADD', KEYS[4], ARGV[1], ARGV[1])
+        redis.call('DEL', KEYS[5])
+        if previous[1] then
+            return {'1', previous[1], previous[2] or ''}
+        end
+        return {'0'}
+        """, List.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> EVICT_ITEM = RedisScript.of("""
+        local previous = redis.call('HMGET', KEYS[1], 'title', 'description')
+        redis.call('DEL', KEYS[1])
+        redis.call('ZREM', KEYS[2], ARGV[1])
+        redis.call('ZREM', KEYS[4], ARGV[1])
+        redis.call('SET', KEYS[5], '1', 'PX', ARGV[2])
+        if previous[1] then
+            redis.call('ZREM', KEYS[3], previous[1] .. ARGV[3] .. ARGV[1])
+            return {'1', previous[1], previous[2] or ''}
+        end
+        return {'0'}
+        """, List.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> LOAD_CART = RedisScript.of("""
+        if redis.call('EXISTS', KEYS[1]) == 0 then
+            if (redis.call('GET', KEYS[3]) or '') ~= ARGV[1] then
+                return {'-1'}
+            end
+            redis.call('HSET', KEYS[1], 'loaded', '1')
+            for i = 2, #ARGV, 2 do
+                redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+            end
+            local pending = redis.call('HGETALL', KEYS[2])
+            for i = 1, #pending, 2 do
+                if tonumber(pending[i + 1]) > 0 then
+                    redis.call('HSET', KEYS[1], pending[i], pending[i + 1])
+                else
+                    redis.call('HDEL', KEYS[1], pending[i])
+                end
+            end
+        end
+        return redis.call('HGETALL', KEYS[1])
+        """, List.class);
+    private static final String CACHED = "1";
+    private static final String STALE = "-1";
+    private static final Duration LEASE_POLL_INTERVAL = Duration.ofMillis(50);
 
     private final ReactiveRedisTemplate<String, String> redis;
     private final ItemsRepository itemsRepository;
     private final CartRepository cartRepository;
+    private final ItemNearCache nearCache;
+    private final SingleFlight<Long, Map<String, String>> itemFlights = new SingleFlight<>();
+    private final SingleFlight<String, List<Item>> pageFlights = new SingleFlight<>();
+    private final String instanceId = UUID.randomUUID().toString();
+    private final boolean leaseEnabled;
+    private final Duration leaseTtl;
+    private final Duration missingTtl;
 
     private static final Logger log = LoggerFactory.getLogger(CacheLoader.class.getName());
 
     public CacheLoader(ReactiveRedisTemplate<String, String> redis,
-        ItemsRepository itemsRepository, CartRepository cartRepository)
+        ItemsRepository itemsRepository, CartRepository cartRepository, ItemNearCache nearCache,
+        @Value("${catalog.cache.lease.enabled:false}") boolean leaseEnabled,
+        @Value("${catalog.cache.lease.ttl:PT5S}") Duration leaseTtl,
+        @Value("${catalog.cache.missing-ttl:PT1M}") Duration missingTtl)
     {
         this.redis = redis;
         this.itemsRepository = itemsRepository;
         this.cartRepository = cartRepository;
+        this.nearCache = nearCache;
+        this.leaseEnabled = leaseEnabled;
+        this.leaseTtl = leaseTtl;
+        this.missingTtl = missingTtl;
     }
 
     /**
-     * Retrieves the quantity of a specific item in the user's cart.
-     * If the item is not found in the cart, it initializes the quantity to 0.
-     * The result is cached in Redis for quick access.
+     * Loads the cart of the user into its Redis hash unless the hash exists.
+     * The hash holds every item of the cart and a {@code loaded} marker, so a missing field means quantity 0.
+     * It is built from the cart table with the pending changes of the dirty hash overlaid.
+     * The flush epoch of the user is read before the table, if a flush completes in between
+     * the rows may miss changes no longer in the dirty hash, so the load is repeated.
      *
-     * @param itemId ID of the item
      * @param userId ID of the user
-     * @return Mono containing the quantity of the item in the cart
+     * @return Mono containing quantities of the cart items keyed by item ID
+     */
+    public Mono<Map<Long, Long>> loadCartIntoCache(long userId) {
+        return redis.opsForValue().get(KEY_CART_EPOCH.formatted(userId))
+            .defaultIfEmpty("")
+            .flatMap(epoch -> cartRepository.findByUserId(userId)
+                .collectList()
+                .flatMap(rows -> {
+                    List<String> args = new ArrayList<>();
+                    args.add(epoch);
+                    for (Cart row : rows) {
+                        args.add(String.valueOf(row.getItemId()));
+                        args.add(String.valueOf(row.getQuantity()));
+                    }
+                    return scriptValues(redis.execute(LOAD_CART, List.of(KEY_CART.formatted(userId),
+                            KEY_CART_DIRTY.formatted(userId), KEY_CART_EPOCH.formatted(userId)), args))
+                        .collectList();
+                }))
+            .flatMap(reply -> {
+                if (!reply.isEmpty() && STALE.equals(reply.get(0))) {
+                    log.debug("Cart of user {} was flushed while loading, loading it again", userId);
+                    return loadCartIntoCache(userId);
+                }
+                log.debug("Cart of user {} loaded to the cache", userId);
+                return Mono.just(parseCart(reply));
+            });
+    }
+
+    /**
+     * Converts the fields of a cart hash into quantities keyed by item ID, skipping the {@code loaded} marker.
+     *
+     * @param fields fields and values of the hash, one after another
+     * @return quantities sorted by item ID
      */
-    public Mono<String> getQuantity(long itemId, long userId) {
-        String key = cartCountKey(itemId, userId);
-        return cartRepository.findByItemIdAndUserId(itemId, userId)
-            .switchIfEmpty(Mono.just(new Cart(itemId, userId, 0L)))
-            .flatMap(cart -> redis.opsForValue().set(key, String.valueOf(cart.getQuantity())))
-            .then(redis.opsForValue().get(key))
-            .doOnNext(count -> log.info("Item count loaded from the cache. ID: {}, User ID: {}, Count: {}",
-                itemId, userId, count));
+    static Map<Long, Long> parseCart(List<String> fields) {
+        Map<Long, Long> cart = new TreeMap<>();
+        for (int i = 0; i + 1 < fields.size(); i += 2) {
+            if (!CART_LOADED.equals(fields.get(i))) {
+                cart.put(Long.parseLong(fields.get(i)), Long.parseLong(fields.get(i + 1)));
+            }
+        }
+        return cart;
+    }
+
+    /**
+     * Loads the number of items in the catalog into Redis.
+     * The counter is only created when it is absent, so concurrent loaders agree on the value.
+     *
+     * @return Mono containing the number of items
+     */
+    public Mono<Long> loadItemsCount() {
+        return itemsRepository.count()
+            .flatMap(count -> redis.opsForValue().setIfAbsent(KEY_ITEMS_COUNT, String.valueOf(count))
+                .then(redis.opsForValue().get(KEY_ITEMS_COUNT))
+                .map(Long::parseLong)
+                .defaultIfEmpty(count))
+            .doOnNext(count -> log.info("Items count loaded to the cache: {}", count));
     }
 
     /**
      * Loads an item from the repository and caches it in Redis.
-     * It also updates the sorted sets for price and title.
+     * It also updates the sorted sets for price, title and insertion order and the search index.
+     * Concurrent loads of the same item share one database query, and with the lease enabled
+     * only one instance of the cluster queries the database while the others wait for the hash.
+     * An item not found in the database leaves a short-lived tombstone, so repeated lookups
+     * of the same unknown ID are rejected without a query until the tombstone expires.
      *
      * @param itemId ID of the item to load
-     * @return Flux containing the item's details as a Map.Entry
+     * @return Mono containing the item's details as a Map
      */
-    public Flux<Map.Entry<String, String>> loadItem(long itemId) {
+    public Mono<Map<String, String>> loadItem(long itemId) {
         var key = itemKey(itemId);
-        log.debug("Loading item from cache. Key: {}, itemId: {}", key, itemId);
-        return itemsRepository.findById(itemId)
-            .switchIfEmpty(Mono.error(new IllegalStateException("Item not found by id " + itemId)))
-            .flatMapMany(item ->
-                redis.opsForZSet().add(Z_PRICE, String.valueOf(item.getId()), item.getPrice().doubleValue())
-                    .then(redis.opsForZSet().add(Z_TITLE, item.getTitle() + KEY_DELIMITER + item.getId(), 0))
-                    .then(redis.<String, String>opsForHash().putAll(key, itemToMap(item)))
-                    .thenMany(redis.<String, String>opsForHash().entries(key))
-            );
+        return rejectIfMissing(itemId).then(itemFlights.execute(itemId, () -> withLease(key,
+            Mono.defer(() -> {
+                log.debug("Loading item from the database. Key: {}, itemId: {}", key, itemId);
+                return itemsRepository.findById(itemId)
+                    .switchIfEmpty(Mono.defer(() -> markMissing(itemId)
+                        .then(Mono.<Item>error(notFound(itemId)))))
+                    .flatMap(item -> save(item).then(readItem(key)));
+            }),
+            rejectIfMissing(itemId).then(readItem(key)))));
+    }
+
+    /**
+     * Fails with the same error as a database miss if the item has a tombstone.
+     *
+     * @param itemId ID of the item
+     * @return empty Mono if the item is not known to be missing, error otherwise
+     */
+    private Mono<Void> rejectIfMissing(long itemId) {
+        return redis.hasKey(KEY_MISSING.formatted(itemId))
+            .flatMap(missing -> missing
+                ? Mono.<Void>error(notFound(itemId))
+                : Mono.empty());
+    }
+
+    /**
+     * Writes a tombstone for an item that does not exist in the database.
+     *
+     * @param itemId ID of the item
+     * @return Mono that completes when the tombstone is written
+     */
+    private Mono<Void> markMissing(long itemId) {
+        log.debug("Item not found, caching the miss. itemId: {}", itemId);
+        return redis.opsForValue().set(KEY_MISSING.formatted(itemId), "1", missingTtl).then();
+    }
+
+    private static IllegalStateException notFound(long itemId) {
+        return new IllegalStateException("Item not found by id " + itemId);
     }
 
     /**
      * Loads pages of items from the repository based on the provided parameters.
      * It supports pagination, searching, and sorting.
+     * Searches use the full-text index of the items table and can be ordered by relevance.
+     * Price bounds apply to searches and to browsing, browsing with a price filter is loaded here
+     * only while the Redis indexes are not known to hold the whole catalog.
      *
      * @param page         Page number to load
      * @param size         Number of items per page
      * @param searchString Search string for filtering items
      * @param sorting      Sorting criteria
-     * @return Flux containing the IDs of the loaded items
+     * @param minPrice     Inclusive lower bound of the price of found items or null
+     * @param maxPrice     Inclusive upper bound of the price of found items or null
+     * @return Flux containing the cached items in the order of the database page
      */
-    public Flux<Long> loadPages(int page, int size, String searchString, Sorting sorting)
+    public Flux<Item> loadPages(int page, int size, String searchString, Sorting sorting,
+        BigDecimal minPrice, BigDecimal maxPrice)
     {
-        Sort sorted = switch (sorting) {
-            case NO -> Sort.unsorted();
-            case PRICE -> Sort.by("price").ascending();
-            case ALPHA -> Sort.by("title").ascending();
+        String flight = String.join(":", sorting.name(), String.valueOf(size), String.valueOf(page),
+            String.valueOf(minPrice), String.valueOf(maxPrice), searchString);
+        return pageFlights.execute(flight, () -> {
+                if (!searchString.isBlank()) {
+                    return itemsRepository.findByFullText(searchString, sorting.name(), minPrice, maxPrice,
+                            size, (long) page * size)
+                        .flatMapSequential(this::cache)
+                        .collectList();
+                }
+                if (minPrice != null || maxPrice != null) {
+                    return itemsRepository.findByPriceRange(sorting.name(), minPrice, maxPrice, size, (long) page * size)
+                        .flatMapSequential(this::cache)
+                        .collectList();
+                }
+                Sort sorted = switch (sorting) {
+                    case NO, RELEVANCE -> Sort.by("id").ascending();
+                    case NEWEST -> Sort.by("id").descending();
+                    case PRICE -> Sort.by("price").ascending();
+                    case PRICE_DESC -> Sort.by("price").descending();
+                    case ALPHA -> Sort.by("title").ascending();
+                    case ALPHA_DESC -> Sort.by("title").descending();
+                };
+                Pageable pageable = PageRequest.of(page, size, sorted);
+                return itemsRepository.findBy(pageable)
+                    .flatMapSequential(this::cache)
+                    .collectList();
+            })
+            .flatMapIterable(items -> items);
+    }
+
+    /**
+     * Loads the page next to the cursor with a keyset seek on (price, id), (title, id) or id,
+     * so deep pages cost the same as the first one.
+     * Descending sortings seek in the opposite direction of their cursor.
+     *
+     * @param cursor Position the page starts after or ends before
+     * @param size   Number of items per page
+     * @return Flux containing the cached items in display order
+     */
+    public Flux<Item> loadPage(PageCursor cursor, int size)
+    {
+        long id = cursor.itemId();
+        boolean before = cursor.backward() != isDescending(cursor.sort());
+        Flux<Item> items = switch (cursor.sort()) {
+            case ALPHA, ALPHA_DESC -> before
+                ? itemsRepository.findPageBeforeTitle(cursor.title(), id, size)
+                : itemsRepository.findPageAfterTitle(cursor.title(), id, size);
+            case PRICE, PRICE_DESC -> before
+                ? itemsRepository.findPageBeforePrice(BigDecimal.valueOf(cursor.score()), id, size)
+                : itemsRepository.findPageAfterPrice(BigDecimal.valueOf(cursor.score()), id, size);
+            case NO, NEWEST, RELEVANCE -> before
+                ? itemsRepository.findPageBeforeId(id, size)
+                : itemsRepository.findPageAfterId(id, size);
         };
-        Pageable pageable = PageRequest.of(page, size, sorted);
-        return (searchString.isBlank()
-                    ? itemsRepository.findBy(pageable)
-                    : itemsRepository.findBySearchString(searchString, pageable))
-            .flatMap(this::save);
+        return pageFlights.execute(cursor.encode() + ":" + size, () -> items
+                .flatMapSequential(this::cache)
+                .collectList()
+                .map(list -> cursor.backward() ? list.reversed() : list))
+            .flatMapIterable(list -> list);
     }
 
     /**
      * Saves an item to the Redis cache.
-     * It stores the item's details in a hash and updates the sorted sets for price and title.
+     * It stores the item's details in a hash, updates the sorted sets for price, title and insertion order
+     * and adds the item to the search index sets of its terms.
+     * Items are saved when they are read from the database, so near caches are not notified;
+     * changed items are written with {@link #replace(Item)} or removed with {@link #evict(long)}, which notify them.
      *
      * @param item Item to save
      * @return Mono containing the ID of the saved item
@@ -127,38 +365,306 @@ public class CacheLoader
         Map<String, String> map = itemToMap(item);
 
         return redis.opsForHash().putAll(key, map)
-            .doOnNext(__ -> log.info("► HSET done for {}", key))
             .then(redis.opsForZSet().add(Z_PRICE, String.valueOf(item.getId()), item.getPrice().doubleValue()))
             .then(redis.opsForZSet().add(Z_TITLE, item.getTitle() + KEY_DELIMITER + item.getId(), 0))
+            .then(redis.opsForZSet().add(Z_NEW, String.valueOf(item.getId()), item.getId()))
+            .then(indexTerms(item))
+            .then(redis.delete(KEY_MISSING.formatted(item.getId())))
             .thenReturn(item.getId());
     }
 
     /**
-     * Updates the count of an item in the user's cart.
-     * If the item does not exist in the cart, it creates a new cart entry with the specified count.
+     * Rewrites the cached item after it was changed in the database.
+     * The hash, the price, title and insertion order index entries are replaced by one script,
+     * so readers never see the old title member next to the new hash. A cached hash of a newer version is kept.
+     * The term postings of the previous content are removed afterwards,
+     * so the item is not found by its old words anymore.
      *
-     * @param id      ID of the item
-     * @param userId  ID of the user
-     * @param newValue New count for the item
-     * @return Mono containing the updated Cart object
+     * @param item Current state of the item
+     * @return Mono containing true if the cache was rewritten, false if it already holds a newer version
      */
-    public Mono<Cart> updateItemCount(long id, long userId, Long newValue)
-    {
-        log.debug("Updating item count in the cart. ID: [{}], User ID: [{}], Count: [{}]", id, userId, newValue);
-        return cartRepository.findByItemIdAndUserId(id, userId)
-            .switchIfEmpty(Mono.defer(() -> {
-                log.info("Creating new cart item. ID: {}, User ID: {}, Count: {}", id, userId, 0L);
-                return cartRepository.insertToCart(id, userId, 0L)
-                    .then(Mono.just(new Cart(id, userId, 0L)))
-                    .doOnNext(cart -> log.info("Created new cart item. ID: {}, User ID: {}, Count: {}",
-                        id, userId, newValue));
-            }))
-            .flatMap(cart -> {
-                cart.setQuantity(newValue);
-                return cartRepository.save(cart);
-            })
-            .doOnNext(cart -> log.info("Updated item count in the cart. ID: {}, User ID: {}, Count: {}",
-                id, userId, newValue));
+    public Mono<Boolean> replace(Item item) {
+        String id = String.valueOf(item.getId());
+        Map<String, String> hash = itemToMap(item);
+        List<String> keys = List.of(itemKey(item.getId()), Z_PRICE, Z_TITLE, Z_NEW, KEY_MISSING.formatted(item.getId()));
+        List<String> args = List.of(id, hash.get(TITLE), hash.get(DESCRIPTION), hash.get(PRICE), hash.get(IMG),
+            hash.get(VERSION), String.valueOf(KEY_DELIMITER));
+        return scriptValues(redis.execute(REPLACE_ITEM, keys, args))
+            .collectList()
+            .flatMap(previous -> {
+                if (previous.getFirst().equals(STALE)) {
+                    log.debug("Cache holds a newer version of the item. Key: {}", keys.getFirst());
+                    return Mono.just(false);
+                }
+                return removeStaleEntries(item.getId(), previous, item)
+                    .then(indexTerms(item))
+                    .then(nearCache.publishInvalidation(item.getId()))
+                    .thenReturn(true);
+            });
+    }
+
+    /**
+     * Removes an item deleted from the database from the cache.
+     * The hash and the index entries are removed and a tombstone is left by one script,
+     * so the item is not loaded again until it is inserted back. The term postings are removed afterwards.
+     *
+     * @param itemId ID of the deleted item
+     * @return Mono that completes when the item is evicted
+     */
+    public Mono<Void> evict(long itemId) {
+        List<String> keys = List.of(itemKey(itemId), Z_PRICE, Z_TITLE, Z_NEW, KEY_MISSING.formatted(itemId));
+        List<String> args = List.of(String.valueOf(itemId), String.valueOf(missingTtl.toMillis()),
+            String.valueOf(KEY_DELIMITER));
+        log.debug("Evicting item from the cache. Key: {}", keys.getFirst());
+        return scriptValues(redis.execute(EVICT_ITEM, keys, args))
+            .collectList()
+            .flatMap(previous -> removeStaleEntries(itemId, previous, null))
+            .then(nearCache.publishInvalidation(itemId));
+    }
+
+    /**
+     * Saves a batch of items to the Redis cache.
+     * The hashes and term postings are written concurrently and the sorted sets with one ZADD each,
+     * so the whole batch goes to Redis in a single pipelined round of commands.
+     * The title and description of an item already cached are read first, so a title member and postings
+     * left by content changed in the meantime are removed.
+     * Like {@link #save(Item)} it does not publish near cache invalidations.
+     *
+     * @param items Items to save
+     * @return Mono containing the number of saved items
+     */
+    public Mono<Long> saveAll(List<Item> items) {
+        if (items.isEmpty()) {
+            return Mono.just(0L);
+        }
+        Set<ZSetOperations.TypedTuple<String>> prices = items.stream()
+            .map(item -> ZSetOperations.TypedTuple.of(String.valueOf(item.getId()), item.getPrice().doubleValue()))
+            .collect(Collectors.toSet());
+        Set<ZSetOperations.TypedTuple<String>> titles = items.stream()
+            .map(item -> ZSetOperations.TypedTuple.of(item.getTitle() + KEY_DELIMITER + item.getId(), 0d))
+            .collect(Collectors.toSet());
+        Set<ZSetOperations.TypedTuple<String>> insertions = items.stream()
+            .map(item -> ZSetOperations.TypedTuple.of(String.valueOf(item.getId()), item.getId().doubleValue()))
+            .collect(Collectors.toSet());
+
+        return Flux.fromIterable(items)
+            .flatMap(item -> redis.<String, String>opsForHash().multiGet(itemKey(item.getId()), List.of(TITLE, DESCRIPTION))
+                .flatMap(previous -> removeOverwrittenEntries(item, previous))
+                .then(redis.opsForHash().putAll(itemKey(item.getId()), itemToMap(item)))
+                .then(indexTerms(item)))
+            .then(redis.opsForZSet().addAll(Z_PRICE, prices))
+            .then(redis.opsForZSet().addAll(Z_TITLE, titles))
+            .then(redis.opsForZSet().addAll(Z_NEW, insertions))
+            .then(redis.delete(items.stream().map(item -> KEY_MISSING.formatted(item.getId())).toArray(String[]::new)))
+            .thenReturn((long) items.size());
+    }
+
+    /**
+     * Evicts the cached items that no longer exist in the database.
+     * Used after a warm-up, which only adds and overwrites entries, to drop items deleted while change notifications
+     * were lost. The IDs not written by the warm-up are checked against the database before they are evicted,
+     * so items inserted while the warm-up was running are kept.
+     *
+     * @param written IDs of the items written by the warm-up
+     * @return Mono containing the number of evicted items
+     */
+    public Mono<Long> evictDeleted(Set<Long> written) {
+        return redis.opsForZSet().scan(Z_NEW, ScanOptions.scanOptions().count(1000).build())
+            .map(tuple -> Long.parseLong(tuple.getValue()))
+            .filter(id -> !written.contains(id))
+            .buffer(500)
+            .concatMap(candidates -> itemsRepository.findAllById(candidates)
+                .map(Item::getId)
+                .collect(Collectors.toSet())
+                .flatMapMany(existing -> Flux.fromIterable(candidates).filter(id -> !existing.contains(id))))
+            .concatMap(id -> evict(id).thenReturn(id))
+            .count()
+            .doOnNext(evicted -> log.debug("Evicted {} items deleted from the catalog", evicted));
+    }
+
+    /**
+     * Counts the items matching a full-text search or, for a blank search, a price range in the database,
+     * used while the indexes in Redis may still be incomplete.
+     *
+     * @param searchString Search string, blank to count the price range only
+     * @param minPrice     Inclusive lower bound of the price or null
+     * @param maxPrice     Inclusive upper bound of the price or null
+     * @return Mono containing the number of matching items
+     */
+    public Mono<Long> countSearch(String searchString, BigDecimal minPrice, BigDecimal maxPrice) {
+        return searchString.isBlank()
+            ? itemsRepository.countByPriceRange(minPrice, maxPrice)
+            : itemsRepository.countByFullText(searchString, minPrice, maxPrice);
+    }
+
+    /**
+     * Marks the cache as holding the whole catalog, so searches are served from the Redis index.
+     * The marker lives next to the index, a flushed Redis loses both.
+     *
+     * @return Mono that completes when the marker is written
+     */
+    public Mono<Void> markWarm() {
+        return redis.opsForValue().set(KEY_CATALOG_WARM, String.valueOf(System.currentTimeMillis())).then();
+    }
+
+    /**
+     * Counts the items in the database and overwrites the cached number of items with the result.
+     * Being idempotent, it can be repeated for the same change without drifting the counter.
+     *
+     * @return Mono containing the number of items
+     */
+    public Mono<Long> refreshItemsCount() {
+        return itemsRepository.count()
+            .flatMap(count -> resetItemsCount(count).thenReturn(count));
+    }
+
+    /**
+     * Overwrites the cached number of items in the catalog.
+     *
+     * @param count Number of items in the catalog
+     * @return Mono that completes when the counter is written
+     */
+    public Mono<Void> resetItemsCount(long count) {
+        return redis.opsForValue().set(KEY_ITEMS_COUNT, String.valueOf(count)).then();
+    }
+
+    /**
+     * Adds the item ID to the posting set of every term found in its title and description.
+     *
+     * @param item Item to index
+     * @return Mono that completes when all postings are written
+     */
+    private Mono<Void> indexTerms(Item item) {
+        String id = String.valueOf(item.getId());
+        return Flux.fromIterable(SearchTokenizer.tokenize(item.getTitle(), item.getDescription()))
+            .flatMap(term -> redis.opsForSet().add(KEY_TERM.formatted(term), id))
+            .then();
+    }
+
+    /**
+     * Removes the entries left by the previous content of an item after a replace or evict script.
+     * The script reply starts with {@code 1} followed by the previous title and description,
+     * then the postings of the previous words not used by the current content are removed.
+     * A reply of {@code 0} means the previous hash was not cached, the old title member is then found
+     * by scanning the title index, while the old postings cannot be found.
+     *
+     * @param itemId   ID of the item
+     * @param previous Reply of the script
+     * @param current  Current state of the item or null if it was deleted
+     * @return Mono that completes when the stale entries are removed
+     */
+    private Mono<Void> removeStaleEntries(long itemId, List<String> previous, Item current) {
+        String id = String.valueOf(itemId);
+        if (previous.getFirst().equals(CACHED)) {
+            Set<String> currentTerms = current == null
+                ? Set.of()
+                : SearchTokenizer.tokenize(current.getTitle(), current.getDescription());
+            return Flux.fromIterable(SearchTokenizer.tokenize(previous.get(1), previous.get(2)))
+                .filter(term -> !currentTerms.contains(term))
+                .flatMap(term -> redis.opsForSet().remove(KEY_TERM.formatted(term), id))
+                .then();
+        }
+        String suffix = KEY_DELIMITER + id;
+        String currentTitle = current == null ? null : current.getTitle() + suffix;
+        return redis.opsForZSet()
+            .scan(Z_TITLE, ScanOptions.scanOptions().match("*" + suffix).count(1000).build())
+            .map(ZSetOperations.TypedTuple::getValue)
+            .filter(member -> !member.equals(currentTitle))
+            .collectList()
+            .flatMap(stale -> stale.isEmpty()
+                ? Mono.empty()
+                : redis.opsForZSet().remove(Z_TITLE, stale.toArray()))
+            .then();
+    }
+
+    /**
+     * Removes the title member and the postings of the cached content of an item about to be overwritten.
+     *
+     * @param item     New state of the item
+     * @param previous Cached title and description, nulls if the item is not cached
+     * @return Mono that completes when the stale entries are removed
+     */
+    private Mono<Void> removeOverwrittenEntries(Item item, List<String> previous) {
+        String title = previous.get(0);
+        if (title == null) {
+            return Mono.empty();
+        }
+        Mono<Long> member = title.equals(item.getTitle())
+            ? Mono.empty()
+            : redis.opsForZSet().remove(Z_TITLE, title + KEY_DELIMITER + item.getId());
+        return member.then(removeStaleEntries(item.getId(),
+            List.of(CACHED, title, Objects.toString(previous.get(1), "")), item));
+    }
+
+    private static Flux<String> scriptValues(Flux<?> result) {
+        return result.cast(Object.class)
+            .flatMapIterable(r -> r instanceof List<?> list ? list : List.of(r))
+            .map(String::valueOf);
+    }
+
+    /**
+     * Returns true if the sorting reads its index from the highest score down.
+     *
+     * @param sorting Sorting criteria
+     * @return true for descending sortings
+     */
+    static boolean isDescending(Sorting sorting) {
+        return switch (sorting) {
+            case NEWEST, ALPHA_DESC, PRICE_DESC -> true;
+            case NO, ALPHA, PRICE, RELEVANCE -> false;
+        };
+    }
+
+    /**
+     * Reads an item hash from Redis.
+     *
+     * @param key Key of the item hash
+     * @return Mono containing the item's details or empty if the hash does not exist
+     */
+    private Mono<Map<String, String>> readItem(String key) {
+        return redis.<String, String>opsForHash()
+            .entries(key)
+            .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+            .filter(map -> !map.isEmpty());
+    }
+
+    /**
+     * Runs the load while holding a short lease in Redis, so only one instance repopulates the key.
+     * Instances that fail to take the lease poll the cache for the value instead and load it themselves
+     * only if the lease expires without the value being written.
+     *
+     * @param name   Name of the cached key
+     * @param load   Load from the database writing the value to the cache
+     * @param cached Read of the value from the cache
+     * @return Mono containing the value
+     */
+    private <V> Mono<V> withLease(String name, Mono<V> load, Mono<V> cached) {
+        if (!leaseEnabled) {
+            return load;
+        }
+        String lease = KEY_LEASE.formatted(name);
+        long polls = Math.max(1, leaseTtl.toMillis() / LEASE_POLL_INTERVAL.toMillis());
+        return redis.opsForValue().setIfAbsent(lease, instanceId, leaseTtl)
+            .flatMap(acquired -> acquired
+                ? load.flatMap(value -> releaseLease(lease).thenReturn(value))
+                    .onErrorResume(e -> releaseLease(lease).then(Mono.error(e)))
+                : cached
+                    .repeatWhenEmpty((int) polls, attempts -> attempts.delayElements(LEASE_POLL_INTERVAL))
+                    .switchIfEmpty(load));
+    }
+
+    private Mono<Void> releaseLease(String lease) {
+        return redis.execute(RELEASE_LEASE, List.of(lease), List.of(instanceId)).then();
+    }
+
+    /**
+     * Saves the item to the Redis cache and returns it.
+     *
+     * @param item Item to save
+     * @return Mono containing the same item once it is cached
+     */
+    private Mono<Item> cache(Item item) {
+        return save(item).thenReturn(item);
     }
 
     private static Map<String, String> itemToMap(Item item)
@@ -168,15 +674,12 @@ public class CacheLoader
             TITLE,       item.getTitle(),
             DESCRIPTION, item.getDescription(),
             PRICE,       item.getPrice().toPlainString(),
-            IMG,         item.getImgPath()
+            IMG,         item.getImgPath(),
+            VERSION,     String.valueOf(Objects.requireNonNullElse(item.getVersion(), 0L))
         );
     }
 
     private String itemKey(long itemId) {
         return KEY_ITEM.formatted(itemId);
     }
-
-    private String cartCountKey(long itemId, long userId) {
-        return KEY_CART_COUNT.formatted(itemId, userId);
-    }
 }
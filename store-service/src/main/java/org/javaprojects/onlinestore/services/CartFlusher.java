@@ -0,0 +1,250 @@
+package org.javaprojects.onlinestore.services;
+
+import jakarta.annotation.PreDestroy;
+import org.javaprojects.onlinestore.repositories.CartRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Persists cart quantities changed in Redis to the cart table behind the request path.
+ * Every change of a quantity records the new value in the dirty hash of its user, so repeated clicks
+ * on the same item are coalesced into one row. The flusher takes the dirty hashes of a batch of users
+ * every {@code catalog.cart.flush.interval}, or sooner once {@code catalog.cart.flush.threshold} changes
+ * are pending, writes them with one statement that upserts and deletes the whole batch,
+ * and clears only the entries that did not change again in the meantime.
+ * The dirty hashes live in Redis, so changes not flushed before a restart are flushed on the next start.
+ * A flush takes a lease on every user it flushes, {@code cart:{userId}:flush}, and holds it from reading the dirty hash
+ * to clearing it, so a slower flush of the same user on this or another instance cannot persist an older quantity
+ * after a newer one. Users leased by another flush are skipped by the periodic flush and awaited by {@link #flushUser(long)}.
+ * Scripts only touch the keys of one user, which share its hash tag, so they stay legal on Redis Cluster;
+ * the set of dirty users is updated with separate commands.
+ */
+@Component
+public class CartFlusher
+{
+    private static final Logger log = LoggerFactory.getLogger(CartFlusher.class);
+    private static final String KEY_CART_DIRTY       = "cart:{%d}:dirty";
+    private static final String KEY_CART_EPOCH       = "cart:{%d}:epoch";
+    private static final String KEY_CART_DIRTY_USERS = "cart:dirty:users";
+    private static final String KEY_CART_FLUSH       = "cart:{%d}:flush";
+    private static final Duration LEASE_POLL_INTERVAL = Duration.ofMillis(50);
+    private static final RedisScript<Long> RELEASE_LEASE = RedisScript.of(
+        "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0",
+        Long.class);
+    private static final RedisScript<Long> CLEAR_FLUSHED = RedisScript.of("""
+        for i = 1, #ARGV, 2 do
+            if redis.call('HGET', KEYS[1], ARGV[i]) == ARGV[i + 1] then
+                redis.call('HDEL', KEYS[1], ARGV[i])
+            end
+        end
+        redis.call('INCR', KEYS[2])
+        return redis.call('HLEN', KEYS[1])
+        """, Long.class);
+
+    private record CartEntry(long userId, long itemId, long quantity) {}
+
+    private final ReactiveRedisTemplate<String, String> redis;
+    private final CartRepository cartRepository;
+    private final boolean enabled;
+    private final Duration interval;
+    private final int batchSize;
+    private final long threshold;
+    private final Duration leaseTtl;
+    private final AtomicLong pending = new AtomicLong();
+    private final Sinks.Many<Long> triggers = Sinks.many().multicast().directBestEffort();
+    private Disposable subscription;
+
+    public CartFlusher(ReactiveRedisTemplate<String, String> redis, CartRepository cartRepository,
+        @Value("${catalog.cart.flush.enabled:true}") boolean enabled,
+        @Value("${catalog.cart.flush.interval:PT1S}") Duration interval,
+        @Value("${catalog.cart.flush.batch-size:200}") int batchSize,
+        @Value("${catalog.cart.flush.threshold:1000}") long threshold,
+        @Value("${catalog.cart.flush.lease-ttl:PT30S}") Duration leaseTtl)
+    {
+        this.redis = redis;
+        this.cartRepository = cartRepository;
+        this.enabled = enabled;
+        this.interval = interval;
+        this.batchSize = batchSize;
+        this.threshold = threshold;
+        this.leaseTtl = leaseTtl;
+    }
+
+    /**
+     * Starts flushing once the application is ready, beginning with the changes left by the previous run.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        subscription = Flux.merge(Flux.interval(Duration.ZERO, interval), triggers.asFlux())
+            .onBackpressureDrop()
+            .concatMap(tick -> flush()
+                .onErrorResume(e -> {
+                    log.warn("Cart flush failed, the changes stay pending", e);
+                    return Mono.empty();
+                }), 1)
+            .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * Counts a change of a cart quantity and triggers a flush when enough changes are pending.
+     *
+     * @param userId       ID of the user
+     * @param firstPending true if the change is the first pending change of the user
+     * @return Mono that completes when the user is registered as dirty
+     */
+    public Mono<Void> onChange(long userId, boolean firstPending) {
+        if (pending.incrementAndGet() >= threshold) {
+            pending.set(0);
+            triggers.tryEmitNext(0L);
+        }
+        return firstPending
+            ? redis.opsForSet().add(KEY_CART_DIRTY_USERS, String.valueOf(userId)).then()
+            : Mono.empty();
+    }
+
+    /**
+     * Flushes the pending changes of a batch of users.
+     *
+     * @return Mono containing the number of flushed cart entries
+     */
+    public Mono<Long> flush() {
+        pending.set(0);
+        return redis.opsForSet().distinctRandomMembers(KEY_CART_DIRTY_USERS, batchSize)
+            .map(Long::parseLong)
+            .collectList()
+            .flatMap(users -> {
+                if (users.size() >= batchSize) {
+                    triggers.tryEmitNext(0L);
+                }
+                String owner = UUID.randomUUID().toString();
+                return Flux.fromIterable(users)
+                    .filterWhen(userId -> acquire(userId, owner))
+                    .collectList()
+                    .flatMap(leased -> withLeases(leased, owner, flushUsers(leased)));
+            });
+    }
+
+    /**
+     * Flushes the pending changes of one user, so the cart table can be read directly.
+     *
+     * @param userId ID of the user
+     * @return Mono that completes when the cart of the user is persisted
+     */
+    public Mono<Void> flushUser(long userId) {
+        String owner = UUID.randomUUID().toString();
+        return acquire(userId, owner)
+            .filter(Boolean::booleanValue)
+            .repeatWhenEmpty(attempts -> attempts.delayElements(LEASE_POLL_INTERVAL))
+            .then(withLeases(List.of(userId), owner, flushUsers(List.of(userId))))
+            .then();
+    }
+
+    /**
+     * Takes the flush lease of a user. The lease expires after {@code catalog.cart.flush.lease-ttl},
+     * so a flusher that died while holding it does not block the user forever.
+     */
+    private Mono<Boolean> acquire(long userId, String owner) {
+        return redis.opsForValue().setIfAbsent(KEY_CART_FLUSH.formatted(userId), owner, leaseTtl);
+    }
+
+    /**
+     * Runs the flush and releases the leases of the users once it completes, fails or is cancelled.
+     * A lease is deleted only while it still belongs to the owner.
+     */
+    private Mono<Long> withLeases(List<Long> users, String owner, Mono<Long> flush) {
+        return Mono.usingWhen(Mono.just(users),
+            leased -> flush,
+            leased -> Flux.fromIterable(leased)
+                .flatMap(userId -> redis.execute(RELEASE_LEASE, List.of(KEY_CART_FLUSH.formatted(userId)), List.of(owner)))
+                .then());
+    }
+
+    private Mono<Long> flushUsers(List<Long> users) {
+        if (users.isEmpty()) {
+            return Mono.just(0L);
+        }
+        return Flux.fromIterable(users)
+            .flatMap(userId -> redis.<String, String>opsForHash()
+                .entries(KEY_CART_DIRTY.formatted(userId))
+                .map(entry -> new CartEntry(userId, Long.parseLong(entry.getKey()), Long.parseLong(entry.getValue()))))
+            .collectList()
+            .flatMap(entries -> {
+                if (entries.isEmpty()) {
+                    return clear(users, entries).thenReturn(0L);
+                }
+                return persist(entries)
+                    .then(clear(users, entries))
+                    .doOnSuccess(done -> log.debug("Flushed {} cart entries of {} users", entries.size(), users.size()))
+                    .thenReturn((long) entries.size());
+            });
+    }
+
+    /**
+     * Writes the entries to the cart table with a single statement,
+     * positive quantities are upserted on the (user_id, item_id) key and zero quantities are deleted.
+     */
+    private Mono<Void> persist(List<CartEntry> entries) {
+        return cartRepository.saveQuantities(
+            entries.stream().map(CartEntry::userId).toArray(Long[]::new),
+            entries.stream().map(CartEntry::itemId).toArray(Long[]::new),
+            entries.stream().map(CartEntry::quantity).toArray(Long[]::new));
+    }
+
+    /**
+     * Removes the flushed entries from the dirty hashes unless they were changed after they were read,
+     * moves the flush epoch of every user and removes the users left without pending changes from the set of dirty users.
+     * A user whose new change arrives between the removal and the check is added back.
+     * The epoch makes a concurrent load of the cart hash retry, its rows may predate the flush.
+     */
+    private Mono<Void> clear(List<Long> users, List<CartEntry> entries) {
+        Map<Long, List<CartEntry>> byUser = entries.stream()
+            .collect(Collectors.groupingBy(CartEntry::userId, LinkedHashMap::new, Collectors.toList()));
+        return Flux.fromIterable(users)
+            .flatMap(userId -> {
+                List<String> args = new ArrayList<>();
+                for (CartEntry entry : byUser.getOrDefault(userId, List.of())) {
+                    args.add(String.valueOf(entry.itemId()));
+                    args.add(String.valueOf(entry.quantity()));
+                }
+                String dirtyKey = KEY_CART_DIRTY.formatted(userId);
+                String member = String.valueOf(userId);
+                return redis.execute(CLEAR_FLUSHED, List.of(dirtyKey, KEY_CART_EPOCH.formatted(userId)), args)
+                    .next()
+                    .filter(left -> left == 0)
+                    .flatMap(empty -> redis.opsForSet().remove(KEY_CART_DIRTY_USERS, member))
+                    .flatMap(removed -> redis.hasKey(dirtyKey))
+                    .filter(Boolean::booleanValue)
+                    .flatMap(changed -> redis.opsForSet().add(KEY_CART_DIRTY_USERS, member));
+            })
+            .then();
+    }
+}
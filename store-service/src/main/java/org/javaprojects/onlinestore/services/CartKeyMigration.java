@@ -0,0 +1,101 @@
+package org.javaprojects.onlinestore.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Moves cart quantities from the keys of the previous layout into the per-user cart hashes while the application runs.
+ * The previous layout kept one {@code count:itemId:userId} string per cart item and the pending changes
+ * in {@code cart:dirty:userId}. Both are found with SCAN and written as pending changes of their user,
+ * a change already pending in the new layout is newer and is kept. The cart hash of the user is dropped afterwards,
+ * so it is rebuilt from the table and the pending changes on the next read, and the old key is deleted.
+ * The migration is idempotent and runs on every start until no old keys are left.
+ */
+@Component
+public class CartKeyMigration
+{
+    private static final Logger log = LoggerFactory.getLogger(CartKeyMigration.class);
+    private static final String OLD_CART_COUNT = "count:*";
+    private static final String OLD_CART_DIRTY = "cart:dirty:*";
+    private static final String KEY_CART       = "cart:{%d}";
+    private static final String KEY_CART_DIRTY = "cart:{%d}:dirty";
+    private static final Pattern OLD_COUNT_KEY = Pattern.compile("count:(\\d+):(\\d+)");
+    private static final Pattern OLD_DIRTY_KEY = Pattern.compile("cart:dirty:(\\d+)");
+    private static final int SCAN_COUNT        = 1000;
+
+    private final ReactiveRedisTemplate<String, String> redis;
+    private final CartFlusher cartFlusher;
+    private final boolean enabled;
+
+    public CartKeyMigration(ReactiveRedisTemplate<String, String> redis, CartFlusher cartFlusher,
+        @Value("${catalog.cart.migration.enabled:true}") boolean enabled)
+    {
+        this.redis = redis;
+        this.cartFlusher = cartFlusher;
+        this.enabled = enabled;
+    }
+
+    /**
+     * Starts the migration in the background once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        migrate().subscribe(
+            moved -> log.info("Cart keys migrated: {}", moved),
+            e -> log.warn("Cart keys migration failed, it is continued on the next start", e));
+    }
+
+    /**
+     * Moves all cart keys of the previous layout.
+     *
+     * @return Mono containing the number of migrated keys
+     */
+    public Mono<Long> migrate() {
+        Flux<Long> counts = scan(OLD_CART_COUNT)
+            .map(OLD_COUNT_KEY::matcher)
+            .filter(Matcher::matches)
+            .concatMap(key -> {
+                long itemId = Long.parseLong(key.group(1));
+                long userId = Long.parseLong(key.group(2));
+                return redis.opsForValue().get(key.group())
+                    .flatMap(quantity -> move(userId, itemId, quantity))
+                    .then(redis.delete(key.group()));
+            });
+        Flux<Long> dirty = scan(OLD_CART_DIRTY)
+            .map(OLD_DIRTY_KEY::matcher)
+            .filter(Matcher::matches)
+            .concatMap(key -> {
+                long userId = Long.parseLong(key.group(1));
+                return redis.<String, String>opsForHash().entries(key.group())
+                    .concatMap(entry -> move(userId, Long.parseLong(entry.getKey()), entry.getValue()))
+                    .then(redis.delete(key.group()));
+            });
+        return Flux.concat(counts, dirty).reduce(0L, Long::sum);
+    }
+
+    private Mono<Void> move(long userId, long itemId, String quantity) {
+        return redis.<String, String>opsForHash()
+            .putIfAbsent(KEY_CART_DIRTY.formatted(userId), String.valueOf(itemId), quantity)
+            .then(Mono.defer(() -> cartFlusher.onChange(userId, true)))
+            .then(redis.delete(KEY_CART.formatted(userId)))
+            .then();
+    }
+
+    private Flux<String> scan(String pattern) {
+        return redis.scan(ScanOptions.scanOptions().match(pattern).count(SCAN_COUNT).build());
+    }
+}
@@ -0,0 +1,300 @@
+package org.javaprojects.onlinestore.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.r2dbc.postgresql.api.PostgresqlConnection;
+import io.r2dbc.postgresql.api.PostgresqlResult;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import org.javaprojects.onlinestore.entities.ImportJob;
+import org.javaprojects.onlinestore.entities.Item;
+import org.javaprojects.onlinestore.enums.ImportFormat;
+import org.javaprojects.onlinestore.models.ImportStatus;
+import org.javaprojects.onlinestore.models.ItemRequest;
+import org.javaprojects.onlinestore.repositories.ImportJobsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcConnectionDetails;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Imports items from a stream of CSV or NDJSON lines.
+ * Lines are parsed as they arrive and grouped into chunks of {@code catalog.import.chunk-size} items.
+ * Every chunk is copied into a temporary table with the COPY protocol and moved into the items table
+ * in one transaction together with the checkpoint of the job, then written to Redis in a pipelined batch
+ * while the next chunk is copied. The input is read only as fast as the chunks are committed.
+ * A failed job can be resumed with the same input, the rows committed by previous runs are skipped.
+ * CSV lines hold the title, the description, the price and the image path; quoted fields may not contain line breaks.
+ */
+@Component
+public class CatalogImporter
+{
+    /**
+     * Beginning of the error of a job that failed on a line of the input rather than on the database.
+     */
+    public static final String INVALID_ITEM = "Invalid item at row ";
+    private static final Logger log = LoggerFactory.getLogger(CatalogImporter.class);
+    private static final String CSV_HEADER = "title,description,price,img_path";
+    private static final String RUNNING = "RUNNING";
+    private static final String DONE = "DONE";
+    private static final String FAILED = "FAILED";
+    private static final Duration STALE_RUN = Duration.ofMinutes(1);
+
+    private static final String SKIP_NOTIFICATIONS = "SET LOCAL catalog.import = 'on'";
+    private static final String CREATE_STAGE = """
+        CREATE TEMP TABLE IF NOT EXISTS items_import (
+            title TEXT, description TEXT, price NUMERIC(10, 2), img_path TEXT
+        ) ON COMMIT DELETE ROWS
+        """;
+    private static final String COPY_STAGE = "COPY items_import (title, description, price, img_path) FROM STDIN (FORMAT csv)";
+    private static final String INSERT_STAGED = """
+        INSERT INTO items (title, description, price, img_path)
+        SELECT title, description, price, img_path FROM items_import
+        RETURNING id, title, description, price, img_path, version
+        """;
+    private static final String CHECKPOINT =
+        "UPDATE import_jobs SET rows_committed = rows_committed + $1, updated_at = now() WHERE id = $2";
+
+    private final R2dbcConnectionDetails connectionDetails;
+    private final ImportJobsRepository jobsRepository;
+    private final CacheLoader cacheLoader;
+    private final CatalogVersion catalogVersion;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+    private final int cacheConcurrency;
+
+    public CatalogImporter(R2dbcConnectionDetails connectionDetails, ImportJobsRepository jobsRepository,
+        CacheLoader cacheLoader, CatalogVersion catalogVersion, ObjectMapper objectMapper,
+        @Value("${catalog.import.chunk-size:5000}") int chunkSize,
+        @Value("${catalog.import.cache-concurrency:4}") int cacheConcurrency)
+    {
+        this.connectionDetails = connectionDetails;
+        this.jobsRepository = jobsRepository;
+        this.cacheLoader = cacheLoader;
+        this.catalogVersion = catalogVersion;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+        this.cacheConcurrency = cacheConcurrency;
+    }
+
+    /**
+     * Runs a new import job or resumes an existing one.
+     *
+     * @param lines  lines of the input
+     * @param format format of the lines
+     * @param jobId  ID of the job to resume or null to start a new job
+     * @return Mono containing the status of the job once the input is consumed or the job fails
+     */
+    public Mono<ImportStatus> importItems(Flux<String> lines, ImportFormat format, Long jobId) {
+        return start(format, jobId)
+            .flatMap(job -> {
+                if (DONE.equals(job.getStatus())) {
+                    return Mono.just(job);
+                }
+                log.info("Catalog import {} started, skipping {} rows", job.getId(), job.getRowsCommitted());
+                return run(job, lines, format)
+                    .then(Mono.defer(() -> finish(job.getId(), DONE, null)))
+                    .flatMap(done -> cacheLoader.refreshItemsCount()
+                        .then(catalogVersion.bump())
+                        .thenReturn(done))
+                    .onErrorResume(e -> {
+                        log.warn("Catalog import {} failed", job.getId(), e);
+                        return finish(job.getId(), FAILED, e.getMessage());
+                    });
+            })
+            .map(ImportStatus::of)
+            .doOnNext(status -> log.info("Catalog import {} {}. Rows: {}, rows/s: {}",
+                status.jobId(), status.status(), status.rowsCommitted(), status.rowsPerSecond()));
+    }
+
+    /**
+     * Returns the progress of a job.
+     *
+     * @param jobId ID of the job
+     * @return Mono containing the status of the job or empty if it does not exist
+     */
+    public Mono<ImportStatus> status(long jobId) {
+        return jobsRepository.findById(jobId).map(ImportStatus::of);
+    }
+
+    private Mono<ImportJob> start(ImportFormat format, Long jobId) {
+        Instant now = Instant.now();
+        if (jobId == null) {
+            return jobsRepository.save(new ImportJob()
+                .setFormat(format.name())
+                .setStatus(RUNNING)
+                .setStartedAt(now)
+                .setUpdatedAt(now));
+        }
+        return jobsRepository.findById(jobId)
+            .switchIfEmpty(Mono.error(new IllegalStateException("Import job not found by id " + jobId)))
+            .flatMap(job -> {
+                if (DONE.equals(job.getStatus())) {
+                    return Mono.just(job);
+                }
+                if (RUNNING.equals(job.getStatus()) && job.getUpdatedAt().plus(STALE_RUN).isAfter(now)) {
+                    return Mono.error(new IllegalStateException("Import job " + jobId + " is already running"));
+                }
+                return jobsRepository.save(job
+                    .setStatus(RUNNING)
+                    .setResumedFrom(job.getRowsCommitted())
+                    .setStartedAt(now)
+                    .setUpdatedAt(now)
+                    .setFinishedAt(null)
+                    .setError(null));
+            });
+    }
+
+    private Mono<ImportJob> finish(long jobId, String status, String error) {
+        Instant now = Instant.now();
+        return jobsRepository.findById(jobId)
+            .flatMap(job -> jobsRepository.save(job
+                .setStatus(status)
+                .setUpdatedAt(now)
+                .setFinishedAt(now)
+                .setError(error)));
+    }
+
+    /**
+     * Streams the input through the database and Redis on a dedicated connection.
+     *
+     * @return Mono completing when every chunk is committed and cached
+     */
+    private Mono<Void> run(ImportJob job, Flux<String> lines, ImportFormat format) {
+        long skipped = job.getRowsCommitted();
+        ConnectionFactory connectionFactory = ConnectionFactories.get(connectionDetails.getConnectionFactoryOptions());
+        return Flux.usingWhen(connectionFactory.create(),
+                connection -> lines
+                    .filter(line -> !line.isBlank() && !(format == ImportFormat.CSV && CSV_HEADER.equalsIgnoreCase(line.strip())))
+                    .skip(skipped)
+                    .index((index, line) -> parse(line, format, skipped + index + 1))
+                    .buffer(chunkSize)
+                    .concatMap(chunk -> copyChunk((PostgresqlConnection) connection, job.getId(), chunk), 1),
+                Connection::close)
+            .flatMap(cacheLoader::saveAll, cacheConcurrency)
+            .then();
+    }
+
+    /**
+     * Copies a chunk into the items table and moves the checkpoint of the job in one transaction.
+     * The change notifications of the inserted rows are suppressed, the chunk is cached by the importer itself.
+     *
+     * @return Mono containing the inserted items with their generated IDs
+     */
+    private Mono<List<Item>> copyChunk(PostgresqlConnection connection, long jobId, List<ItemRequest> chunk) {
+        Flux<ByteBuf> csv = Flux.fromIterable(chunk)
+            .buffer(500)
+            .map(rows -> Unpooled.wrappedBuffer(toCsv(rows).getBytes(StandardCharsets.UTF_8)));
+        return connection.beginTransaction()
+            .then(execute(connection, SKIP_NOTIFICATIONS))
+            .then(execute(connection, CREATE_STAGE))
+            .then(connection.copyIn(COPY_STAGE, csv))
+            .thenMany(connection.createStatement(INSERT_STAGED).execute()
+                .flatMap(result -> result.map((row, metadata) -> new Item(
+                    row.get("id", Long.class),
+                    row.get("title", String.class),
+                    row.get("description", String.class),
+                    row.get("price", BigDecimal.class),
+                    row.get("img_path", String.class))
+                    .setVersion(row.get("version", Long.class)))))
+            .collectList()
+            .flatMap(items -> connection.createStatement(CHECKPOINT)
+                .bind(0, (long) chunk.size())
+                .bind(1, jobId)
+                .execute()
+                .flatMap(PostgresqlResult::getRowsUpdated)
+                .then(connection.commitTransaction())
+                .thenReturn(items))
+            .doOnNext(items -> log.debug("Catalog import {} committed {} rows", jobId, items.size()))
+            .onErrorResume(e -> connection.rollbackTransaction().then(Mono.error(e)));
+    }
+
+    private static Mono<Void> execute(PostgresqlConnection connection, String sql) {
+        return connection.createStatement(sql).execute()
+            .flatMap(PostgresqlResult::getRowsUpdated)
+            .then();
+    }
+
+    private ItemRequest parse(String line, ImportFormat format, long row) {
+        ItemRequest item;
+        try {
+            item = switch (format) {
+                case NDJSON -> objectMapper.readValue(line, ItemRequest.class);
+                case CSV -> {
+                    List<String> fields = splitCsv(line);
+                    if (fields.size() != 4) {
+                        throw new IllegalArgumentException("expected 4 fields, found " + fields.size());
+                    }
+                    yield new ItemRequest(null, fields.get(0), fields.get(1), new BigDecimal(fields.get(2).strip()),
+                        fields.get(3));
+                }
+            };
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            throw new IllegalArgumentException(INVALID_ITEM + row + ": " + e.getMessage(), e);
+        }
+        if (item.title() == null || item.title().isBlank() || item.description() == null
+            || item.price() == null || item.price().signum() < 0 || item.imgPath() == null || item.imgPath().isBlank()) {
+            throw new IllegalArgumentException(INVALID_ITEM + row);
+        }
+        return item;
+    }
+
+    /**
+     * Splits a CSV line, fields may be enclosed in double quotes with quotes inside doubled.
+     */
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static String toCsv(List<ItemRequest> items) {
+        StringBuilder csv = new StringBuilder();
+        for (ItemRequest item : items) {
+            csv.append(quote(item.title())).append(',')
+                .append(quote(item.description())).append(',')
+                .append(item.price().toPlainString()).append(',')
+                .append(quote(item.imgPath())).append('\n');
+        }
+        return csv.toString();
+    }
+
+    private static String quote(String value) {
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
@@ -1,21 +1,44 @@
 package org.javaprojects.onlinestore.services;
 
-import org.javaprojects.onlinestore.entities.Cart;
+import org.javaprojects.onlinestore.entities.Item;
 import org.javaprojects.onlinestore.enums.Sorting;
+import org.javaprojects.onlinestore.models.CartChange;
+import org.javaprojects.onlinestore.models.CartSummary;
+import org.javaprojects.onlinestore.models.CatalogPage;
+import org.javaprojects.onlinestore.models.CatalogQuery;
 import org.javaprojects.onlinestore.models.ItemModel;
+import org.javaprojects.onlinestore.models.PageCursor;
+import org.javaprojects.onlinestore.models.TitleSuggestion;
 import org.javaprojects.onlinestore.security.AuthUser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.domain.Range;
-
 import org.springframework.data.redis.connection.Limit;
+
+import org.springframework.data.redis.connection.zset.Aggregate;
+import org.springframework.data.redis.connection.zset.Weights;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 import static org.javaprojects.onlinestore.security.SecurityUtil.*;
 
@@ -30,60 +53,162 @@ public class CatalogRedisStore {
     private static final String KEY_ITEM        = "item:%d";
     private static final String Z_PRICE         = "z:price";
     private static final String Z_TITLE         = "z:title";
+    private static final String Z_NEW           = "z:new";
     private static final String ID              = "id";
     private static final String TITLE           = "title";
     private static final String DESCRIPTION     = "description";
     private static final String PRICE           = "price";
     private static final String IMG             = "img";
-    private static final String COUNT           = "count";
-    private static final String KEY_CART_COUNT  = "count:%d:%d";
+    private static final String VERSION         = "version";
+    private static final String KEY_CART        = "cart:{%d}";
+    private static final String KEY_CART_DIRTY  = "cart:{%d}:dirty";
+    private static final String KEY_TERM        = "idx:term:%s";
+    private static final String KEY_SEARCH      = "search:%s";
+    private static final String KEY_PRICE_RANGE = "filter:%s:%s:%s";
+    private static final String KEY_ITEMS_COUNT = "catalog:size";
+    private static final String KEY_CATALOG_WARM = "catalog:warm";
     public static final char KEY_DELIMITER      = '|';
+    private static final int HYDRATE_CONCURRENCY = 32;
+    private static final Duration SEARCH_TTL    = Duration.ofSeconds(60);
+    private static final String BY_TITLE        = "item:*->title";
+    private static final String SET_QUANTITY    = "set";
+    private static final String ADD_QUANTITY    = "add";
+    private static final int CART_LOAD_ATTEMPTS = 3;
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> SORT_RESULT = RedisScript.of("""
+        if ARGV[4] == '' then
+            return redis.call('SORT', KEYS[1], 'LIMIT', ARGV[1], ARGV[2], ARGV[3])
+        end
+        return redis.call('SORT', KEYS[1], 'BY', ARGV[4], 'ALPHA', 'LIMIT', ARGV[1], ARGV[2], ARGV[3])
+        """, List.class);
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> CART_CHANGE = RedisScript.of("""
+        if redis.call('EXISTS', KEYS[1]) == 0 then
+            return {-1}
+        end
+        local reply = {1 - redis.call('EXISTS', KEYS[2])}
+        for i = 1, #ARGV, 3 do
+            local quantity = tonumber(ARGV[i + 1])
+            if ARGV[i + 2] ~= 'set' then
+                quantity = tonumber(redis.call('HGET', KEYS[1], ARGV[i]) or '0') + quantity
+            end
+            if quantity <= 0 then
+                quantity = 0
+                redis.call('HDEL', KEYS[1], ARGV[i])
+            else
+                redis.call('HSET', KEYS[1], ARGV[i], quantity)
+            end
+            redis.call('HSET', KEYS[2], ARGV[i], quantity)
+            reply[#reply + 1] = quantity
+        end
+        return reply
+        """, List.class);
 
     private final ReactiveRedisTemplate<String, String> redis;
     private final CacheLoader cacheLoader;
+    private final ItemNearCache nearCache;
+    private final CartFlusher cartFlusher;
+    private final LruCache<String, List<TitleSuggestion>> suggestions;
 
-    public CatalogRedisStore(ReactiveRedisTemplate<String, String> redis, CacheLoader loader)
+    public CatalogRedisStore(ReactiveRedisTemplate<String, String> redis, CacheLoader loader,
+        ItemNearCache nearCache, CartFlusher cartFlusher,
+        @Value("${catalog.suggest.cache-size:1000}") int suggestCacheSize,
+        @Value("${catalog.suggest.ttl:PT30S}") Duration suggestTtl)
     {
         this.redis = redis;
         this.cacheLoader = loader;
+        this.nearCache = nearCache;
+        this.cartFlusher = cartFlusher;
+        this.suggestions = new LruCache<>(suggestCacheSize, suggestTtl);
+    }
+
+    /**
+     * Loads the cart script into Redis once the application is ready,
+     * so even the first click is a single EVALSHA instead of a NOSCRIPT reply followed by EVAL.
+     * Redis drops loaded scripts on restart, the template then falls back to EVAL once.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadScripts() {
+        redis.execute(connection -> connection.scriptingCommands()
+                .scriptLoad(ByteBuffer.wrap(CART_CHANGE.getScriptAsString().getBytes(StandardCharsets.UTF_8))))
+            .subscribe(sha -> log.debug("Cart script loaded: {}", sha),
+                e -> log.warn("Cart script is not loaded, it is sent with the first click", e));
     }
 
     /**
      * Resets the count of an item in the basket for a specific user to zero.
+     * The change is persisted to the database by the {@link CartFlusher}.
      * @param id ID of the item to reset.
      * @param userId ID of the user whose basket is being modified.
-     * @return Mono indicating completion of the operation.
+     * @return Mono containing the new count of the item in the basket.
      */
-    public Mono<Boolean> resetCountValue(long id, long userId) {
-        String key = cartCountKey(id, userId);
-        return redis.opsForValue()
-            .set(key, "0");
+    public Mono<Long> resetCountValue(long id, long userId) {
+        return changeCounts(userId, List.of(CartChange.set(id, 0))).map(List::getFirst);
     }
 
     /**
      * Increments the count of an item in the basket for a specific user.
      * If the count goes below zero, it resets the count to zero.
+     * The cart of the user is one hash, {@code cart:{userId}}, next to the hash of its pending changes,
+     * {@code cart:{userId}:dirty}. Both share the hash tag of the user, so they live in one cluster slot
+     * and a click is a single EVALSHA of a script that changes the quantity atomically, clamps it at zero,
+     * removes the field when it reaches zero and records the new quantity as pending;
+     * the {@link CartFlusher} persists it later.
      * @param id ID of the item to increment.
      * @param delta Amount to increment or decrement the count by.
      * @param userId ID of the user whose basket is being modified.
      * @return Mono containing the new count of the item in the basket.
      */
     public Mono<Long> increment(long id, long delta, long userId) {
-        String key = cartCountKey(id, userId);
-        return redis.opsForValue()
-            .increment(key, delta)
-                .flatMap(newValue -> {
-                    if (newValue <= 0) {
-                        log.debug("Item count is 0. Resetting the count for item ID: [{}]", id);
-                        return redis.opsForValue().set(key, "0")
-                            .thenReturn(0L);
-                    }
-                    log.debug("Item count is greater than 0. New value: [{}]", newValue);
-                    return redis.opsForValue().get(key)
-                        .map(Long::parseLong);
-                })
-            .flatMap(newValue -> cacheLoader.updateItemCount(id, userId, newValue))
-            .map(Cart::getQuantity);
+        return changeCounts(userId, List.of(CartChange.add(id, delta)))
+            .map(List::getFirst)
+            .doOnNext(newValue -> log.debug("Item count changed. ID: [{}], New value: [{}]", id, newValue));
+    }
+
+    /**
+     * Applies a batch of changes to the cart of a user with a single call of the cart script,
+     * loading the cart hash from the database first if it is missing.
+     * The changes are applied in order, so several changes of one item add up.
+     * The user is registered with the {@link CartFlusher} when the changes are the first pending ones.
+     * @param userId ID of the user whose basket is being modified.
+     * @param changes Relative or absolute changes of the quantities.
+     * @return Mono containing the new quantities in the order of the changes.
+     */
+    public Mono<List<Long>> changeCounts(long userId, List<CartChange> changes) {
+        List<String> args = new ArrayList<>();
+        for (CartChange change : changes) {
+            args.add(String.valueOf(change.itemId()));
+            args.add(String.valueOf(change.quantity() != null ? change.quantity() : change.delta()));
+            args.add(change.quantity() != null ? SET_QUANTITY : ADD_QUANTITY);
+        }
+        Mono<List<Long>> change = scriptValues(redis.execute(CART_CHANGE,
+                List.of(KEY_CART.formatted(userId), KEY_CART_DIRTY.formatted(userId)), args))
+            .map(Long::parseLong)
+            .collectList();
+        return applyChange(userId, change, CART_LOAD_ATTEMPTS)
+            .flatMap(reply -> cartFlusher.onChange(userId, reply.getFirst() == 1)
+                .thenReturn(reply.subList(1, reply.size())));
+    }
+
+    /**
+     * Runs the cart script, loading the cart hash and running it again while the hash is missing,
+     * e.g. because it was evicted again right after it was loaded.
+     * @param userId ID of the user whose basket is being modified.
+     * @param change Call of the cart script.
+     * @param attempts Number of script calls left.
+     * @return Mono containing the reply of the script.
+     */
+    private Mono<List<Long>> applyChange(long userId, Mono<List<Long>> change, int attempts) {
+        return change.flatMap(reply -> {
+            if (reply.getFirst() >= 0) {
+                return Mono.just(reply);
+            }
+            if (attempts <= 1) {
+                return Mono.error(new IllegalStateException("Cart could not be loaded for user: " + userId));
+            }
+            return cacheLoader.loadCartIntoCache(userId)
+                .then(applyChange(userId, change, attempts - 1));
+        });
     }
 
     /**
@@ -115,14 +240,131 @@ public class CatalogRedisStore {
      * @return Mono containing the ItemModel if found, or empty if not found.
      */
     public Mono<ItemModel> findById(long id) {
+        return itemEntries(id)
+            .zipWith(currentCart(), (map, cart) -> toItemModel(map, cart));
+    }
+
+    /**
+     * Returns the version of an item without hydrating it.
+     * The version is read from the near cache or as a single field of the item hash,
+     * the item is loaded from the database only when its hash is not cached at all.
+     * @param id ID of the item.
+     * @return Mono containing the version of the item.
+     */
+    public Mono<Long> itemVersion(long id) {
+        Map<String, String> cached = nearCache.get(id);
+        if (cached != null) {
+            return Mono.just(versionOf(cached));
+        }
         return redis.<String, String>opsForHash()
-            .entries(itemKey(id))
-            .switchIfEmpty(cacheLoader.loadItem(id))
-            .collectMap(Map.Entry::getKey, Map.Entry::getValue)
-            .flatMap(map -> findCountForItem(id)
-                .doOnNext(quantity -> map.put(COUNT, quantity))
-                .thenReturn(map))
-            .map(this::toItemModel);
+            .get(itemKey(id), VERSION)
+            .map(Long::parseLong)
+            .switchIfEmpty(Mono.defer(() -> itemEntries(id).map(CatalogRedisStore::versionOf)));
+    }
+
+    /**
+     * Hydrates a batch of items keeping the order of the given IDs.
+     * Items missing from the near cache are read with HGETALL commands issued concurrently over the shared
+     * connection, so Lettuce pipelines them and every key stays a single-key command on Redis Cluster.
+     * Hashes absent from Redis are loaded from the database. Items that do not exist anymore are skipped.
+     * The cart of the current user is read once and overlaid on every item.
+     * @param ids IDs of the items in the order they have to be returned.
+     * @return Flux of ItemModel in the same order as the IDs.
+     */
+    public Flux<ItemModel> findAllByIds(List<Long> ids) {
+        return currentCart()
+            .flatMapMany(cart -> findAllByIds(ids, cart));
+    }
+
+    /**
+     * Hydrates a batch of items keeping the order of the given IDs and overlays the given cart.
+     * @param ids IDs of the items in the order they have to be returned.
+     * @param cart Cart quantities keyed by item ID.
+     * @return Flux of ItemModel in the same order as the IDs.
+     */
+    public Flux<ItemModel> findAllByIds(List<Long> ids, Map<Long, Long> cart) {
+        return Flux.fromIterable(ids)
+            .flatMapSequential(id -> itemEntries(id)
+                .onErrorResume(IllegalStateException.class, e -> {
+                    log.debug("Skipping item missing from the catalog: {}", id);
+                    return Mono.empty();
+                }), HYDRATE_CONCURRENCY)
+            .map(map -> toItemModel(map, cart));
+    }
+
+    /**
+     * Finds the IDs that do not belong to any item of the catalog.
+     * The items are looked up like in {@link #findAllByIds(List, Map)}, so known items are served from the caches
+     * and unknown IDs are rejected by their tombstones after the first database miss.
+     * @param ids IDs of the items to check.
+     * @return Mono containing the unknown IDs, empty list if all items exist.
+     */
+    public Mono<List<Long>> findUnknownIds(Collection<Long> ids) {
+        return Flux.fromIterable(Set.copyOf(ids))
+            .flatMap(id -> itemEntries(id)
+                .then(Mono.<Long>empty())
+                .onErrorResume(IllegalStateException.class, e -> Mono.just(id)), HYDRATE_CONCURRENCY)
+            .collectList();
+    }
+
+    /**
+     * Sums up the cart of the current user without hydrating its items.
+     * Prices are read with one ZMSCORE from the price index, only items missing from the index
+     * are read from their hashes.
+     * @return Mono containing the number of positions and the total price of the cart.
+     */
+    public Mono<CartSummary> cartSummary() {
+        return currentCart()
+            .flatMap(cart -> {
+                if (cart.isEmpty()) {
+                    return Mono.just(new CartSummary(0, 0));
+                }
+                List<Long> ids = List.copyOf(cart.keySet());
+                return redis.opsForZSet().score(Z_PRICE, ids.stream().map(String::valueOf).toArray())
+                    .flatMapMany(prices -> Flux.range(0, ids.size())
+                        .flatMap(i -> {
+                            long id = ids.get(i);
+                            Double price = prices.get(i);
+                            return (price != null
+                                    ? Mono.just(price)
+                                    : itemEntries(id).map(map -> Double.parseDouble(map.get(PRICE))))
+                                .map(found -> found * cart.get(id))
+                                .onErrorResume(IllegalStateException.class, e -> {
+                                    log.debug("Skipping cart item missing from the catalog: {}", id);
+                                    return Mono.empty();
+                                });
+                        }))
+                    .reduce(0d, Double::sum)
+                    .map(total -> new CartSummary(cart.size(), total));
+            });
+    }
+
+    /**
+     * Loads the cart of the current user once per request.
+     * Anonymous users always get an empty cart.
+     * @return Mono containing item quantities keyed by item ID.
+     */
+    public Mono<Map<Long, Long>> currentCart() {
+        return currentUser()
+            .filter(authUser -> !isAnonymous(authUser))
+            .flatMap(authUser -> cartOf(authUser.getId()))
+            .defaultIfEmpty(Map.of());
+    }
+
+    /**
+     * Reads the whole cart of a user with a single HGETALL of its hash,
+     * the hash is loaded from the database when it is missing.
+     * @param userId ID of the user.
+     * @return Mono containing item quantities keyed by item ID, sorted by item ID.
+     */
+    public Mono<Map<Long, Long>> cartOf(long userId) {
+        return redis.<String, String>opsForHash()
+            .entries(KEY_CART.formatted(userId))
+            .flatMapIterable(entry -> List.of(entry.getKey(), entry.getValue()))
+            .collectList()
+            .flatMap(fields -> fields.isEmpty()
+                ? cacheLoader.loadCartIntoCache(userId)
+                : Mono.just(CacheLoader.parseCart(fields)));
     }
 
     /**
@@ -134,128 +376,530 @@ public class CatalogRedisStore {
      * @return Flux of ItemModel containing the items.
      */
     public Flux<ItemModel> findPage(int page, int size, String search, Sorting sort) {
-        Flux<Long> idsMono = switch (sort) {
-            case PRICE, NO -> idsByPrice(page, size);
-            case ALPHA -> idsByTitle(page, size);
-        };
-        return idsMono
-            .switchIfEmpty(cacheLoader.loadPages(page, size, search, sort))
-            .doOnNext(i -> log.debug("Item ID is going to be mapped: {}", i))
-            .flatMap(this::findById)
-            .filter(i -> matches(i, search));
+        return findPageIds(new CatalogQuery(search, sort, size, page, null))
+            .flatMapMany(catalogPage -> findAllByIds(catalogPage.ids()));
     }
 
     /**
-     * Retrieves the total count of items in the catalog.
-     * @return Mono containing the count of items.
+     * Returns the number of items matching the search.
+     * The size of the whole catalog is kept in an atomic counter, the size of a search
+     * is the cardinality of its result set, so neither needs a count query.
+     * @param search Search query, blank for the whole catalog.
+     * @return Mono containing the number of items.
      */
-    private Flux<Long> idsByPrice(int page, int size) {
+    public Mono<Long> countItems(String search) {
+        return countItems(new CatalogQuery(search, Sorting.NO, 1, 0, null));
+    }
 
-        long offset = (long) page * size;
+    /**
+     * Returns the number of items matching the search and the price filter of the query.
+     * A price filter is counted with ZCOUNT on the price index or on the search result set.
+     * Searches and price filters are counted from the same source as their page, see {@link #findPageIds(CatalogQuery)}.
+     * @param query Page request.
+     * @return Mono containing the number of items.
+     */
+    public Mono<Long> countItems(CatalogQuery query) {
+        Set<String> terms = SearchTokenizer.tokenize(query.search());
+        if (terms.isEmpty()) {
+            return query.hasPriceFilter()
+                ? catalogWarm().flatMap(warm -> warm
+                    ? redis.opsForZSet().count(Z_PRICE, priceRange(query))
+                    : cacheLoader.countSearch(query.search(), query.minPrice(), query.maxPrice()))
+                : redis.opsForValue().get(KEY_ITEMS_COUNT)
+                    .map(Long::parseLong)
+                    .switchIfEmpty(Mono.defer(cacheLoader::loadItemsCount));
+        }
+        return searchIndexed(query)
+            .flatMap(indexed -> indexed
+                ? searchResult(terms)
+                    .flatMap(key -> query.hasPriceFilter()
+                        ? redis.opsForZSet().count(key, priceRange(query))
+                        : redis.opsForZSet().size(key))
+                : cacheLoader.countSearch(query.search(), query.minPrice(), query.maxPrice()));
+    }
 
-        Range<Double> all = Range
-            .from(Range.Bound.<Double>unbounded())
-            .to(  Range.Bound.unbounded());
+    /**
+     * Resolves the IDs of the items on a catalog page and the navigation to its neighbours.
+     * Browsing pages are read by rank from z:new, z:price or z:title, descending sortings read
+     * the same index in reverse. A cursor is turned into a rank with ZRANK, so every page costs
+     * O(log N + page size) regardless of its depth. One extra member is read to know whether a next page exists.
+     * A price filter narrows the price index to a window of ranks and any other index to a stored result set.
+     * Searches and price filters are served from the Redis indexes only once a warm-up has put the whole catalog
+     * into Redis, before that the indexes hold only the items read so far and such pages are loaded from the database.
+     * @param query Page request.
+     * @return Mono containing the page.
+     */
+    public Mono<CatalogPage> findPageIds(CatalogQuery query) {
+        Set<String> terms = SearchTokenizer.tokenize(query.search());
+        Sorting sort = query.sorting();
+        if (!terms.isEmpty()) {
+            Mono<CatalogPage> loaded = Mono.defer(() -> loadedPage(cacheLoader.loadPages(query.pageNumber(),
+                query.pageSize(), query.search(), sort, query.minPrice(), query.maxPrice()), query, null));
+            return searchIndexed(query)
+                .flatMap(indexed -> indexed
+                    ? searchResult(terms)
+                        .flatMap(key -> priceFiltered(key, query))
+                        .flatMap(key -> resultPage(key, query))
+                        .defaultIfEmpty(emptyPage(query))
+                    : loaded);
+        }
+        if (query.hasPriceFilter()) {
+            Mono<CatalogPage> loaded = Mono.defer(() -> loadedPage(cacheLoader.loadPages(query.pageNumber(),
+                query.pageSize(), query.search(), sort, query.minPrice(), query.maxPrice()), query, null));
+            return catalogWarm()
+                .flatMap(warm -> {
+                    if (!warm) {
+                        return loaded;
+                    }
+                    return Z_PRICE.equals(indexKey(sort))
+                        ? browsePage(query)
+                        : priceFiltered(Z_PRICE, query)
+                            .flatMap(key -> resultPage(key, query))
+                            .defaultIfEmpty(emptyPage(query));
+                });
+        }
+        return browsePage(query);
+    }
 
-        Limit limit = Limit.limit().offset((int)offset).count(size);
-        log.debug("idsByPrice: Page offset: {}", offset);
-        return redis.opsForZSet()
-            .rangeByScore(Z_PRICE, all, limit)
-            .map(Long::parseLong);
+    /**
+     * Decides whether a search is served from the term index in Redis.
+     * Ranking by relevance lives in the full-text index of the database,
+     * any other search needs a completed warm-up, otherwise the index may miss matching items.
+     * @param query Page request with search terms.
+     * @return Mono containing true if the search is served from Redis.
+     */
+    private Mono<Boolean> searchIndexed(CatalogQuery query) {
+        return query.sorting() == Sorting.RELEVANCE
+            ? Mono.just(false)
+            : catalogWarm();
     }
+
     /**
-     * Retrieves item IDs sorted by title from Redis.
-     * @param page Page number to retrieve.
+     * Checks the marker written by a completed warm-up, without it the indexes may miss items.
+     * @return Mono containing true if the Redis indexes hold the whole catalog.
+     */
+    private Mono<Boolean> catalogWarm() {
+        return redis.hasKey(KEY_CATALOG_WARM);
+    }
+
+    /**
+     * Reads a browsing page by rank from the sorted index of its sorting.
+     * On a cache miss an unfiltered page is loaded from the database.
+     * @param query Page request without search terms.
+     * @return Mono containing the page.
+     */
+    private Mono<CatalogPage> browsePage(CatalogQuery query) {
+        Sorting sort = query.sorting();
+        PageCursor decoded = PageCursor.decode(query.cursor());
+        PageCursor cursor = decoded != null && decoded.sort() == sort ? decoded : null;
+        int size = query.pageSize();
+        String key = indexKey(sort);
+        boolean descending = CacheLoader.isDescending(sort);
+        return rankWindow(key, descending, query)
+            .flatMap(window -> {
+                long lowest = window.getT1();
+                long highest = window.getT2();
+                Mono<Long> start = cursor == null
+                    ? Mono.just(lowest + (long) query.pageNumber() * size)
+                    : seekRank(key, descending, cursor, size).map(rank -> Math.max(lowest, rank));
+                return start
+                    .filter(first -> first <= highest)
+                    .flatMap(first -> readIndex(key, descending, first, Math.min(first + size, highest))
+                        .collectList()
+                        .filter(members -> !members.isEmpty())
+                        .map(members -> indexPage(sort, members, first, lowest, size)));
+            })
+            .switchIfEmpty(Mono.defer(() -> query.hasPriceFilter()
+                ? Mono.just(emptyPage(query))
+                : loadedPage(cursor == null
+                        ? cacheLoader.loadPages(query.pageNumber(), size, query.search(), sort, null, null)
+                        : cacheLoader.loadPage(cursor, size),
+                    query, cursor)));
+    }
+
+    /**
+     * Finds the ranks of the first and the last member of the index within the price filter of the query.
+     * Only the price index is ever filtered this way, its members in a price range occupy consecutive ranks.
+     * @param key Key of the sorted index.
+     * @param descending true if the index is read in reverse.
+     * @param query Page request.
+     * @return Mono containing the first and the last rank, the last one is unbounded without a price filter.
+     */
+    private Mono<Tuple2<Long, Long>> rankWindow(String key, boolean descending, CatalogQuery query) {
+        if (!query.hasPriceFilter()) {
+            return Mono.just(Tuples.of(0L, Long.MAX_VALUE));
+        }
+        Range.Bound<Double> none = Range.Bound.unbounded();
+        Double min = query.minPrice() == null ? null : query.minPrice().doubleValue();
+        Double max = query.maxPrice() == null ? null : query.maxPrice().doubleValue();
+        Mono<Long> skipped = descending
+            ? (max == null ? Mono.just(0L) : redis.opsForZSet().count(key, Range.of(Range.Bound.exclusive(max), none)))
+            : (min == null ? Mono.just(0L) : redis.opsForZSet().count(key, Range.of(none, Range.Bound.exclusive(min))));
+        Mono<Long> reached = descending
+            ? redis.opsForZSet().count(key, Range.of(min == null ? none : Range.Bound.inclusive(min), none))
+            : redis.opsForZSet().count(key, Range.of(none, max == null ? none : Range.Bound.inclusive(max)));
+        return Mono.zip(skipped, reached.map(count -> count - 1));
+    }
+
+    /**
+     * Reads members of the index with their scores between two ranks.
+     * @param key Key of the sorted index.
+     * @param descending true if the index is read in reverse.
+     * @param first Rank of the first member.
+     * @param last Rank of the last member.
+     * @return Flux of the members in display order.
+     */
+    private Flux<ZSetOperations.TypedTuple<String>> readIndex(String key, boolean descending, long first, long last) {
+        return descending
+            ? redis.opsForZSet().reverseRangeWithScores(key, Range.closed(first, last))
+            : redis.opsForZSet().rangeWithScores(key, Range.closed(first, last));
+    }
+
+    /**
+     * Finds the rank the page of the cursor starts at.
+     * If the member of the cursor is not in the index anymore, its score or title is used to find the position.
+     * @param key Key of the sorted index.
+     * @param descending true if the index is read in reverse.
+     * @param cursor Cursor of the page.
+     * @param size Number of items per page.
+     * @return Mono containing the rank of the first member of the page.
+     */
+    private Mono<Long> seekRank(String key, boolean descending, PageCursor cursor, int size) {
+        Mono<Long> rank = descending
+            ? redis.opsForZSet().reverseRank(key, cursor.member())
+            : redis.opsForZSet().rank(key, cursor.member());
+        return rank
+            .map(found -> cursor.backward() ? found : found + 1)
+            .switchIfEmpty(Mono.defer(() -> countBefore(key, descending, cursor)))
+            .map(boundary -> cursor.backward() ? Math.max(0, boundary - size) : boundary);
+    }
+
+    /**
+     * Counts the members placed before the cursor position.
+     * @param key Key of the sorted index.
+     * @param descending true if the index is read in reverse.
+     * @param cursor Cursor of the page.
+     * @return Mono containing the number of members before the position.
+     */
+    private Mono<Long> countBefore(String key, boolean descending, PageCursor cursor) {
+        if (Z_TITLE.equals(key)) {
+            Range.Bound<String> bound = cursor.backward()
+                ? Range.Bound.exclusive(cursor.member())
+                : Range.Bound.inclusive(cursor.member());
+            return redis.opsForZSet().lexCount(key, descending
+                ? Range.of(bound, Range.Bound.unbounded())
+                : Range.of(Range.Bound.unbounded(), bound));
+        }
+        Range.Bound<Double> bound = cursor.backward()
+            ? Range.Bound.exclusive(cursor.score())
+            : Range.Bound.inclusive(cursor.score());
+        return redis.opsForZSet().count(key, descending
+            ? Range.of(bound, Range.Bound.unbounded())
+            : Range.of(Range.Bound.unbounded(), bound));
+    }
+
+    /**
+     * Builds a page from a window of the sorted index read with one extra member.
+     * @param sort Sorting of the index.
+     * @param window Members of the index starting at the first member of the page.
+     * @param start Rank of the first member of the page.
+     * @param lowest Rank of the first member of the first page.
      * @param size Number of items per page.
-     * @return Flux of item IDs.
+     * @return Catalog page with cursors of the neighbouring pages.
      */
-    private Flux<Long> idsByTitle(int page, int size) {
+    private static CatalogPage indexPage(Sorting sort, List<ZSetOperations.TypedTuple<String>> window,
+        long start, long lowest, int size) {
+        boolean hasNext = window.size() > size;
+        boolean hasPrevious = start > lowest;
+        List<ZSetOperations.TypedTuple<String>> members = hasNext ? window.subList(0, size) : window;
+        ZSetOperations.TypedTuple<String> first = members.get(0);
+        ZSetOperations.TypedTuple<String> last = members.get(members.size() - 1);
+        return new CatalogPage(
+            members.stream().map(member -> idOf(member.getValue())).toList(),
+            (int) ((start - lowest) / size),
+            hasNext,
+            hasPrevious,
+            hasNext ? PageCursor.after(sort, last.getValue(), last.getScore()).encode() : null,
+            hasPrevious ? PageCursor.before(sort, first.getValue(), first.getScore()).encode() : null);
+    }
 
-        long offset = (long) page * size;
+    /**
+     * Builds a page from items loaded from the database on a cache miss.
+     * @param items Items of the page in display order.
+     * @param query Page request.
+     * @param cursor Cursor the page was loaded with or null.
+     * @return Mono containing the page.
+     */
+    private Mono<CatalogPage> loadedPage(Flux<Item> items, CatalogQuery query, PageCursor cursor) {
+        Sorting sort = query.sorting();
+        boolean keyset = query.search().isBlank() && !query.hasPriceFilter();
+        return items.collectList()
+            .map(list -> {
+                boolean hasNext = list.size() == query.pageSize();
+                boolean hasPrevious = cursor != null || query.pageNumber() > 0;
+                Item first = list.isEmpty() ? null : list.get(0);
+                Item last = list.isEmpty() ? null : list.get(list.size() - 1);
+                return new CatalogPage(
+                    list.stream().map(Item::getId).toList(),
+                    query.pageNumber(),
+                    hasNext,
+                    hasPrevious,
+                    keyset && hasNext ? PageCursor.after(sort, indexMember(sort, last), indexScore(sort, last)).encode() : null,
+                    keyset && hasPrevious && first != null
+                        ? PageCursor.before(sort, indexMember(sort, first), indexScore(sort, first)).encode()
+                        : null);
+            });
+    }
 
-        Range<String> all = Range
-            .from(Range.Bound.<String>unbounded())
-            .to(  Range.Bound.unbounded());
+    /**
+     * Builds an empty page for a filter nothing matches.
+     * @param query Page request.
+     * @return Catalog page without items.
+     */
+    private static CatalogPage emptyPage(CatalogQuery query) {
+        return new CatalogPage(List.of(), query.pageNumber(), false, query.pageNumber() > 0, null, null);
+    }
 
-        Limit limit = Limit.limit().offset((int)offset).count(size);
+    /**
+     * Retrieves a page of item IDs from a result set scored by price.
+     * Results are sorted by price through the score, by title with SORT BY the item hashes
+     * and by insertion with a numeric SORT of the IDs.
+     * @param key Key of the result set.
+     * @param query Page request.
+     * @return Mono containing the page or empty if the result set is empty.
+     */
+    private Mono<CatalogPage> resultPage(String key, CatalogQuery query) {
+        int size = query.pageSize();
+        long offset = (long) query.pageNumber() * size;
+        Sorting sort = query.sorting();
+        return (switch (sort) {
+                case PRICE -> redis.opsForZSet().range(key, Range.closed(offset, offset + size));
+                case PRICE_DESC -> redis.opsForZSet().reverseRange(key, Range.closed(offset, offset + size));
+                case ALPHA, ALPHA_DESC -> sortedResult(key, offset, size + 1, sort == Sorting.ALPHA_DESC, BY_TITLE);
+                case NO, NEWEST, RELEVANCE -> sortedResult(key, offset, size + 1, sort == Sorting.NEWEST, "");
+            })
+            .map(CatalogRedisStore::idOf)
+            .collectList()
+            .filter(ids -> !ids.isEmpty())
+            .map(ids -> {
+                boolean hasNext = ids.size() > size;
+                return new CatalogPage(hasNext ? ids.subList(0, size) : ids,
+                    query.pageNumber(), hasNext, offset > 0, null, null);
+            });
+    }
 
+    /**
+     * Sorts a result set with SORT.
+     * @param key Key of the result set.
+     * @param offset Number of members to skip.
+     * @param count Number of members to return.
+     * @param descending true to sort in descending order.
+     * @param by Pattern of the sort key or blank to sort the IDs numerically.
+     * @return Flux of the sorted members.
+     */
+    private Flux<String> sortedResult(String key, long offset, int count, boolean descending, String by) {
+        return scriptValues(redis.execute(SORT_RESULT, List.of(key),
+            List.of(String.valueOf(offset), String.valueOf(count), descending ? "DESC" : "ASC", by)));
+    }
+
+    /**
+     * Intersects the posting sets of the terms with the price index and keeps the result for a short time,
+     * so the following pages of the same search are served by a single range read.
+     * @param terms Normalized search terms.
+     * @return Mono containing the key of the sorted set with the matching item IDs scored by price.
+     */
+    private Mono<String> searchResult(Set<String> terms) {
+        String key = KEY_SEARCH.formatted(String.join(" ", terms));
+        List<String> termKeys = terms.stream().map(KEY_TERM::formatted).toList();
+        double[] weights = new double[termKeys.size() + 1];
+        weights[0] = 1;
+        return redis.hasKey(key)
+            .flatMap(exists -> exists
+                ? Mono.just(key)
+                : redis.opsForZSet()
+                    .intersectAndStore(Z_PRICE, termKeys, key, Aggregate.SUM, Weights.of(weights))
+                    .doOnNext(found -> log.debug("Search [{}] matched {} items", terms, found))
+                    .then(redis.expire(key, SEARCH_TTL))
+                    .thenReturn(key));
+    }
+
+    /**
+     * Stores the members of a set scored by price within the price filter of the query with ZRANGESTORE BYSCORE
+     * and keeps the result for a short time.
+     * @param key Key of the sorted set scored by price.
+     * @param query Page request.
+     * @return Mono containing the key of the filtered set, the same key without a price filter.
+     */
+    private Mono<String> priceFiltered(String key, CatalogQuery query) {
+        if (!query.hasPriceFilter()) {
+            return Mono.just(key);
+        }
+        String filtered = KEY_PRICE_RANGE.formatted(key,
+            Objects.toString(query.minPrice(), "-inf"), Objects.toString(query.maxPrice(), "+inf"));
+        return redis.hasKey(filtered)
+            .flatMap(exists -> exists
+                ? Mono.just(filtered)
+                : redis.opsForZSet()
+                    .rangeAndStoreByScore(key, filtered, priceRange(query))
+                    .doOnNext(found -> log.debug("Price filter [{}] matched {} items", filtered, found))
+                    .then(redis.expire(filtered, SEARCH_TTL))
+                    .thenReturn(filtered));
+    }
+
+    /**
+     * Converts the price filter of the query into a range of scores.
+     * @param query Page request.
+     * @return Range of prices, unbounded on the sides without a bound.
+     */
+    private static Range<Double> priceRange(CatalogQuery query) {
+        return Range.of(
+            query.minPrice() == null ? Range.Bound.unbounded() : Range.Bound.inclusive(query.minPrice().doubleValue()),
+            query.maxPrice() == null ? Range.Bound.unbounded() : Range.Bound.inclusive(query.maxPrice().doubleValue()));
+    }
+
+    /**
+     * Completes a title prefix from the lexicographic title index with ZRANGEBYLEX.
+     * The range runs from {@code [prefix} to the prefix followed by the highest character,
+     * so every {@code title|id} member starting with the prefix is inside it.
+     * The completions of recent prefixes are kept in an in-process LRU for a short time.
+     * @param prefix Beginning of the title, case-sensitive.
+     * @param limit Maximal number of completions.
+     * @return Mono containing the completions in title order.
+     */
+    public Mono<List<TitleSuggestion>> suggestTitles(String prefix, int limit) {
+        String cacheKey = limit + ":" + prefix;
+        List<TitleSuggestion> cached = suggestions.get(cacheKey);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
         return redis.opsForZSet()
-            .rangeByLex(Z_TITLE, all, limit)
-            .map(member -> Long.parseLong(
-                member.substring(member.lastIndexOf(KEY_DELIMITER) + 1)));
+            .rangeByLex(Z_TITLE, Range.closed(prefix, prefix + Character.MAX_VALUE), Limit.limit().count(limit))
+            .map(member -> new TitleSuggestion(idOf(member), member.substring(0, member.lastIndexOf(KEY_DELIMITER))))
+            .collectList()
+            .doOnNext(found -> suggestions.put(cacheKey, List.copyOf(found)));
     }
+
     /**
-     * Constructs a Redis key for an item based on its ID.
-     * @param itemId ID of the item.
-     * @return Redis key as a String.
+     * Flattens the reply of a script returning a multi-bulk reply into its values.
+     * @param result Script reply.
+     * @return Flux of the returned values.
      */
-    private String itemKey(long itemId) {
-        return KEY_ITEM.formatted(itemId);
+    private static Flux<String> scriptValues(Flux<?> result) {
+        return result.cast(Object.class)
+            .flatMapIterable(r -> r instanceof List<?> list ? list : List.of(r))
+            .map(String::valueOf);
     }
 
     /**
-     * Constructs a Redis key for the cart count of a specific item for a user.
-     * @param itemId ID of the item.
-     * @param userId ID of the user.
-     * @return Redis key as a String.
+     * Reads the item hash from the near cache, then from Redis, loading it from the database on a cache miss.
+     * @param id ID of the item.
+     * @return Mono containing an immutable map of item properties.
+     */
+    private Mono<Map<String, String>> itemEntries(long id) {
+        Map<String, String> cached = nearCache.get(id);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
+        return redis.<String, String>opsForHash()
+            .entries(itemKey(id))
+            .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+            .filter(map -> !map.isEmpty())
+            .switchIfEmpty(Mono.defer(() -> cacheLoader.loadItem(id)))
+            .map(map -> nearCache.put(id, map));
+    }
+
+    /**
+     * Returns the version stored in the item hash, hashes cached before versioning have version 0.
      */
-    private String cartCountKey(long itemId, long userId) {
-        return KEY_CART_COUNT.formatted(itemId, userId);
+    private static long versionOf(Map<String, String> m) {
+        String version = m.get(VERSION);
+        return version == null ? 0 : Long.parseLong(version);
     }
 
     /**
-     * Checks if the item matches the search query.
-     * @param i ItemModel to check.
-     * @param q Search query.
-     * @return true if the item matches the query, false otherwise.
+     * Returns the sorted index used for browsing with the given sorting.
+     * @param sort Sorting criteria.
+     * @return Key of the sorted set.
      */
-    private boolean matches(ItemModel i, String q) {
-        if (q.isBlank()) return true;
-        String l = q.toLowerCase();
-        return i.getTitle().toLowerCase().contains(l)
-            || i.getDescription().toLowerCase().contains(l);
+    private static String indexKey(Sorting sort) {
+        return switch (sort) {
+            case ALPHA, ALPHA_DESC -> Z_TITLE;
+            case PRICE, PRICE_DESC -> Z_PRICE;
+            case NO, NEWEST, RELEVANCE -> Z_NEW;
+        };
+    }
+
+    /**
+     * Returns the member of the item in the sorted index of the given sorting.
+     * @param sort Sorting criteria.
+     * @param item Item.
+     * @return Member of the sorted set.
+     */
+    private static String indexMember(Sorting sort, Item item) {
+        return Z_TITLE.equals(indexKey(sort))
+            ? item.getTitle() + KEY_DELIMITER + item.getId()
+            : String.valueOf(item.getId());
+    }
+
+    /**
+     * Returns the score of the item in the sorted index of the given sorting.
+     * @param sort Sorting criteria.
+     * @param item Item.
+     * @return Score of the member.
+     */
+    private static double indexScore(Sorting sort, Item item) {
+        return switch (indexKey(sort)) {
+            case Z_TITLE -> 0;
+            case Z_PRICE -> item.getPrice().doubleValue();
+            default -> item.getId();
+        };
+    }
+
+    /**
+     * Extracts the item ID from a member of a sorted index.
+     * @param member Either an ID or a {@code title|id} member.
+     * @return ID of the item.
+     */
+    private static long idOf(String member) {
+        return Long.parseLong(member.substring(member.lastIndexOf(KEY_DELIMITER) + 1));
+    }
+
+    /**
+     * Constructs a Redis key for an item based on its ID.
+     * @param itemId ID of the item.
+     * @return Redis key as a String.
+     */
+    private String itemKey(long itemId) {
+        return KEY_ITEM.formatted(itemId);
     }
 
     /**
      * Converts a map of item properties to an ItemModel.
      * @param m Map containing item properties.
+     * @param cart Cart quantities of the current user keyed by item ID.
      * @return ItemModel constructed from the map.
      */
-    private ItemModel toItemModel(Map<String,String> m) {
+    private ItemModel toItemModel(Map<String,String> m, Map<Long, Long> cart) {
+        long id = Long.parseLong(m.get(ID));
         return new ItemModel()
-            .setId     (Long.parseLong(m.get(ID)))
+            .setId     (id)
             .setTitle  (m.get(TITLE))
             .setDescription(m.get(DESCRIPTION))
             .setPrice  (new BigDecimal(m.get(PRICE)))
             .setImgPath(m.get(IMG))
-            .setCount  (Integer.parseInt(m.getOrDefault(COUNT, "0")));
-    }
-
-    /**
-     * Finds the count of items in the basket for the current user.
-     * If the user is anonymous, it returns "0".
-     * @param itemId ID of the item to find the count for.
-     * @return Mono containing the count as a String.
-     */
-    public Mono<String> findCountForItem(Long itemId) {
-        return currentUser()
-            .filter(u -> u.getAuthorities().stream()
-                .noneMatch(a -> a.getAuthority().equals(ROLE_ANONYMOUS)))
-            .flatMap(authUser -> isAnonymous(itemId, authUser)
-                ? Mono.just("0")
-                : cacheLoader.getQuantity(itemId, authUser.getId()));
+            .setVersion(versionOf(m))
+            .setCount  (cart.getOrDefault(id, 0L));
     }
 
     /**
      * Checks if the user is anonymous and logs a debug message if so.
-     * @param itemId ID of the item being checked.
      * @param authUser The authenticated user.
      * @return true if the user is anonymous, false otherwise.
      */
-    private static boolean isAnonymous(Long itemId, AuthUser authUser) {
+    private static boolean isAnonymous(AuthUser authUser) {
         if (authUser.getAuthorities().stream()
             .anyMatch(a -> a.getAuthority().equals(ROLE_ANONYMOUS))) {
-            log.debug("Anonymous user is trying to get count of. Returning count as 0 for item ID: {}", itemId);
+            log.debug("Anonymous user is browsing the catalog. Cart counts are 0");
             return true;
         }
         return false;
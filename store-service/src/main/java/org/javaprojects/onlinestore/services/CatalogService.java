@@ -10,7 +10,6 @@ import org.javaprojects.onlinestore.repositories.*;
 import org.javaprojects.onlinestore.security.AuthUser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import reactor.core.publisher.Flux;
@@ -36,6 +35,7 @@ public class CatalogService {
     private final BalanceApi balanceApi;
     private final PaymentApi paymentApi;
     private final CatalogRedisStore cache;
+    private final CartFlusher cartFlusher;
 
     public CatalogService(ItemsRepository itemRepository,
         OrdersRepository ordersRepository,
@@ -43,7 +43,8 @@ public class CatalogService {
         OrderItemRepository orderItemRepository,
         BalanceApi balanceApi,
         PaymentApi paymentApi,
-        CatalogRedisStore cache) {
+        CatalogRedisStore cache,
+        CartFlusher cartFlusher) {
         this.itemRepository = itemRepository;
         this.ordersRepository = ordersRepository;
         this.cartRepository = cartRepository;
@@ -51,6 +52,7 @@ public class CatalogService {
         this.balanceApi = balanceApi;
         this.paymentApi = paymentApi;
         this.cache = cache;
+        this.cartFlusher = cartFlusher;
     }
 
     /**
@@ -66,15 +68,68 @@ public class CatalogService {
         return cache.findPage(pageNumber, pageSize, searchString, sorting);
     }
 
+    /**
+     * Resolves a page of the catalog addressed by a page number or a cursor.
+     *
+     * @param query the page request
+     * @return a Mono containing the IDs of the items on the page and the navigation to its neighbours
+     */
+    public Mono<CatalogPage> findPage(CatalogQuery query) {
+        return cache.findPageIds(query);
+    }
+
+    /**
+     * Retrieves items by their IDs keeping the order of the IDs.
+     *
+     * @param ids the IDs of the items
+     * @return a Flux of ItemModel in the order of the IDs
+     */
+    public Flux<ItemModel> findAllItems(List<Long> ids) {
+        return cache.findAllByIds(ids);
+    }
+
     /**
      * Retrieves the total number of items in the catalog.
      *
      * @return a Mono containing the total count of items
      */
-    @Cacheable(value = "itemsSize", key = "'total'")
     public Mono<Long> getItemsCount()
     {
-        return itemRepository.count();
+        return cache.countItems("");
+    }
+
+    /**
+     * Retrieves the number of items matching the search string.
+     *
+     * @param searchString search string, blank for the whole catalog
+     * @return a Mono containing the count of matching items
+     */
+    public Mono<Long> getItemsCount(String searchString)
+    {
+        return cache.countItems(searchString);
+    }
+
+    /**
+     * Retrieves the number of items matching the search string and the price filter of the query.
+     *
+     * @param query the page request
+     * @return a Mono containing the count of matching items
+     */
+    public Mono<Long> getItemsCount(CatalogQuery query)
+    {
+        return cache.countItems(query);
+    }
+
+    /**
+     * Completes a title prefix for typeahead.
+     *
+     * @param prefix the beginning of the title
+     * @param limit  the maximal number of completions
+     * @return a Mono containing the completions in title order
+     */
+    public Mono<List<TitleSuggestion>> suggestTitles(String prefix, int limit)
+    {
+        return cache.suggestTitles(prefix, limit);
     }
 
     /**
@@ -87,6 +142,26 @@ public class CatalogService {
         return cache.findById(id);
     }
 
+    /**
+     * Finds the IDs that do not belong to any item of the catalog.
+     *
+     * @param ids the IDs of the items
+     * @return a Mono containing the unknown IDs, or an empty list if all items exist
+     */
+    public Mono<List<Long>> findUnknownItemIds(Collection<Long> ids) {
+        return cache.findUnknownIds(ids);
+    }
+
+    /**
+     * Retrieves the version of an item, it changes every time the item is modified.
+     *
+     * @param id the ID of the item
+     * @return a Mono containing the version of the item, or an error if the item does not exist
+     */
+    public Mono<Long> getItemVersion(long id) {
+        return cache.itemVersion(id);
+    }
+
     /**
      * Retrieves an item by its ID and the authenticated user.
      *
@@ -101,7 +176,7 @@ public class CatalogService {
 
     /**
      * Decrements the quantity of an item in the basket.
-     * If the quantity reaches zero, the item is removed from the basket.
+     * If the quantity reaches zero, the item is removed from the basket when the change is flushed.
      *
      * @param itemId   the ID of the item
      * @param authUser the authenticated user
@@ -109,26 +184,24 @@ public class CatalogService {
      */
     public Mono<Void> decrementQuantity(Long itemId, AuthUser authUser) {
         return cache.decrementCount(itemId, authUser.getId())
-            .flatMap(newValue -> {
+            .doOnNext(newValue -> {
                 if (newValue <= 0) {
-                    log.debug("Item count is zero, deleting item from basket");
-                    return deleteItemFromBasket(itemId, authUser);
+                    log.debug("Item count is zero, the item leaves the basket");
                 }
-                return Mono.empty();
             })
             .then();
     }
 
     /**
      * Deletes an item from the user's basket.
+     * The quantity is reset in Redis, the cart row is deleted when the change is flushed.
      *
      * @param itemId   the ID of the item to delete
      * @param authUser the authenticated user
      * @return a Mono that completes when the item is deleted
      */
     public Mono<Void> deleteItemFromBasket(Long itemId, AuthUser authUser) {
-        return cartRepository.removeFromCart(itemId, authUser.getId())
-            .then(cache.resetCountValue(itemId, authUser.getId()))
+        return cache.resetCountValue(itemId, authUser.getId())
             .then();
     }
 
@@ -141,8 +214,37 @@ public class CatalogService {
         return currentUser()
             .switchIfEmpty(Mono.error(new UserPrincipalNotFoundException("User not authenticated")))
             .flatMapMany(user ->
-                cartRepository.findByUserId(user.getId())
-            .flatMap(cart -> cache.findById(cart.getItemId())));
+                cache.cartOf(user.getId())
+                    .map(cart -> List.copyOf(cart.keySet()))
+                    .flatMapMany(cache::findAllByIds));
+    }
+
+    /**
+     * Retrieves the number of positions and the total price of the user's basket.
+     *
+     * @return a Mono containing the summary of the basket
+     */
+    public Mono<CartSummary> getBasketSummary() {
+        return cache.cartSummary();
+    }
+
+    /**
+     * Applies a batch of changes to the user's basket and returns the resulting basket.
+     * The changes are applied to Redis with a single script call and persisted right away
+     * with a single statement, so the basket is saved when the response is sent.
+     *
+     * @param changes  relative or absolute changes of the quantities, applied in order
+     * @param authUser the authenticated user
+     * @return a Mono containing the items of the basket with their quantities and the total price
+     */
+    public Mono<CartContents> updateBasket(List<CartChange> changes, AuthUser authUser) {
+        long userId = authUser.getId();
+        log.debug("Applying {} changes to the basket of user {}", changes.size(), userId);
+        return (changes.isEmpty() ? Mono.<Void>empty() : cache.changeCounts(userId, changes).then())
+            .then(Mono.defer(() -> cartFlusher.flushUser(userId)))
+            .then(Mono.defer(() -> cache.cartOf(userId)))
+            .flatMap(cart -> cache.findAllByIds(List.copyOf(cart.keySet()), cart).collectList())
+            .map(CartContents::of);
     }
 
     @Transactional
@@ -158,39 +260,34 @@ public class CatalogService {
     /**
      * Finds all orders for the current user and returns them as a Flux of OrderModel.
      * Each OrderModel contains a list of ItemModel representing the items in the order.
+     * Orders are emitted one by one as soon as their items are loaded.
      *
      * @return a Flux of OrderModel containing all orders for the current user
      */
     public Flux<OrderModel> findAllOrders() {
-        Flux<Order> orderFlux = currentUser().flatMapMany(user ->
-            ordersRepository.findByUserId(user.getId()));
-
-        Flux<OrderItem> orderItemFlux = orderFlux
-            .flatMap(order -> orderItemRepository.findByOrderId(order.getId())
-                .doOnNext(orderItem -> orderItem.setOrder(order)));
-
-        Map<Long, OrderModel> orderModelMap = new HashMap<>();
+        return currentUser()
+            .flatMapMany(user -> ordersRepository.findByUserId(user.getId()))
+            .concatMap(order -> orderItemRepository.findByOrderId(order.getId())
+                .flatMapSequential(orderItem -> itemRepository.findById(orderItem.getItemId())
+                    .map(item -> new ItemModel(item.getId(),
+                        item.getTitle(),
+                        item.getDescription(),
+                        item.getPrice(),
+                        item.getImgPath(),
+                        orderItem.getQuantity())))
+                .collectList()
+                .map(items -> new OrderModel(order.getId(), items, order.getTotal())));
+    }
 
-        return orderItemFlux
-            .flatMap(orderItem ->
-                itemRepository.findById(orderItem.getItemId())
-                    .doOnNext(orderItem::setItem).thenReturn(orderItem)
-            )
-            .doOnNext(orderItem -> {
-                Item item = orderItem.getItem();
-                ItemModel itemModel = new ItemModel(item.getId(),
-                    item.getTitle(),
-                    item.getDescription(),
-                    item.getPrice(),
-                    item.getImgPath(),
-                    orderItem.getQuantity());
-
-                orderModelMap.computeIfAbsent(orderItem.getOrderId(), k -> new OrderModel())
-                        .addItem(itemModel)
-                        .setId(orderItem.getOrderId())
-                        .setTotalSum(orderItem.getOrder().getTotal());
-            })
-            .thenMany(Flux.fromIterable(orderModelMap.values()));
+    /**
+     * Checks whether the current user has placed any order.
+     *
+     * @return a Mono containing true if there is at least one order
+     */
+    public Mono<Boolean> hasOrders() {
+        return currentUser()
+            .flatMapMany(user -> ordersRepository.findByUserId(user.getId()))
+            .hasElements();
     }
 
     /**
@@ -235,35 +332,34 @@ public class CatalogService {
 
     /**
      * Buys all items in the user's basket, processes payment, and creates an order.
+     * The pending cart changes of the user are flushed first, so the order is built from the cart table.
      *
      * @param authUser the authenticated user
      * @return a Mono containing the ID of the created order
      */
     @Transactional
     public Mono<Long> buyItemsInBasket(AuthUser authUser) {
-        Flux<Cart> cartFlux = cartRepository.findByUserId(authUser.getId());
-
-        Flux<Item> itemFlux = cartFlux
-            .flatMap(cart -> itemRepository.findById(cart.getItemId()))
-            .doOnNext(item ->
-                log.debug("Item found in cart: {}", item)
-            );
+        Flux<Cart> cartFlux = cartFlusher.flushUser(authUser.getId())
+            .thenMany(cartRepository.findByUserId(authUser.getId()));
+
+        Flux<OrderItem> orderItemFlux = cartFlux
+            .flatMap(cart -> itemRepository.findById(cart.getItemId())
+                .doOnNext(item ->
+                    log.debug("Item found in cart: {}", item)
+                )
+                .map(item ->
+                    new OrderItem()
+                        .setItemId(item.getId())
+                        .setQuantity(cart.getQuantity())
+                        .setItem(item)
+                ));
 
         Mono<GetBalanceResponse> balanceMono = balanceApi.getBalance()
             .doOnNext(balance ->
                 log.debug("Balance found: {}", balance)
             );
 
-        return itemFlux
-            .flatMap(item ->
-                cache.findCountForItem(item.getId())
-                    .map(count ->
-                        new OrderItem()
-                            .setItemId(item.getId())
-                            .setQuantity(Long.parseLong(count))
-                            .setItem(item)
-                    )
-            )
+        return orderItemFlux
             .collectList()
             .flatMap(orderItems -> {
                 BigDecimal totalPrice = getTotalPrice(orderItems);
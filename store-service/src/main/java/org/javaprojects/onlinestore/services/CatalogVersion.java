@@ -0,0 +1,50 @@
+package org.javaprojects.onlinestore.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Global version of the catalog shared by all instances through Redis.
+ * Any change of the catalog content bumps the version, so everything derived from the rendered
+ * catalog can be keyed by it instead of being invalidated one by one.
+ * A missing version is initialized with the current time, so it never goes back after Redis is flushed.
+ */
+@Component
+public class CatalogVersion
+{
+    private static final Logger log = LoggerFactory.getLogger(CatalogVersion.class);
+    private static final String KEY_CATALOG_VERSION = "catalog:version";
+
+    private final ReactiveRedisTemplate<String, String> redis;
+
+    public CatalogVersion(ReactiveRedisTemplate<String, String> redis) {
+        this.redis = redis;
+    }
+
+    /**
+     * Returns the current version of the catalog.
+     *
+     * @return Mono containing the version
+     */
+    public Mono<Long> current() {
+        return redis.opsForValue().get(KEY_CATALOG_VERSION)
+            .switchIfEmpty(Mono.defer(() -> redis.opsForValue()
+                .setIfAbsent(KEY_CATALOG_VERSION, String.valueOf(System.currentTimeMillis()))
+                .then(redis.opsForValue().get(KEY_CATALOG_VERSION))))
+            .map(Long::parseLong);
+    }
+
+    /**
+     * Moves the catalog to a new version.
+     *
+     * @return Mono containing the new version
+     */
+    public Mono<Long> bump() {
+        return current()
+            .then(redis.opsForValue().increment(KEY_CATALOG_VERSION))
+            .doOnNext(version -> log.debug("Catalog version bumped to {}", version));
+    }
+}
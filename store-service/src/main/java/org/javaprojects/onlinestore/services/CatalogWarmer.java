@@ -0,0 +1,154 @@
+package org.javaprojects.onlinestore.services;
+
+import org.javaprojects.onlinestore.entities.Item;
+import org.javaprojects.onlinestore.models.WarmUpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams the whole items table into Redis, so the catalog is served from the cache from the first request.
+ * The table is read with a server-side cursor of {@code catalog.warm-up.fetch-size} rows and written
+ * to Redis in pipelined batches of {@code catalog.warm-up.batch-size} items.
+ * The warm-up runs on startup when {@code catalog.warm-up.enabled} is set and on demand
+ * through the catalogwarmup actuator endpoint.
+ * Items deleted while change notifications were lost are evicted at the end of the warm-up,
+ * renamed items lose their old title and postings as they are written.
+ * A finished warm-up marks the cache as complete, searches are served from the database until then.
+ */
+@Component
+public class CatalogWarmer
+{
+    private static final Logger log = LoggerFactory.getLogger(CatalogWarmer.class);
+    private static final String SELECT_ITEMS = "SELECT id, title, description, price, img_path, version FROM items ORDER BY id";
+
+    private final DatabaseClient databaseClient;
+    private final CacheLoader cacheLoader;
+    private final ItemNearCache nearCache;
+    private final CatalogVersion catalogVersion;
+    private final boolean enabled;
+    private final int fetchSize;
+    private final int batchSize;
+    private final int concurrency;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong itemsWritten = new AtomicLong();
+    private volatile Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    public CatalogWarmer(DatabaseClient databaseClient, CacheLoader cacheLoader, ItemNearCache nearCache,
+        CatalogVersion catalogVersion,
+        @Value("${catalog.warm-up.enabled:true}") boolean enabled,
+        @Value("${catalog.warm-up.fetch-size:1000}") int fetchSize,
+        @Value("${catalog.warm-up.batch-size:500}") int batchSize,
+        @Value("${catalog.warm-up.concurrency:4}") int concurrency)
+    {
+        this.databaseClient = databaseClient;
+        this.cacheLoader = cacheLoader;
+        this.nearCache = nearCache;
+        this.catalogVersion = catalogVersion;
+        this.enabled = enabled;
+        this.fetchSize = fetchSize;
+        this.batchSize = batchSize;
+        this.concurrency = concurrency;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpOnStartup() {
+        if (enabled) {
+            warmUp().subscribe();
+        }
+    }
+
+    /**
+     * Starts the warm-up unless it is already running.
+     *
+     * @return Mono containing the status once the run completes,
+     * or the current status immediately if a run is already in progress
+     */
+    public Mono<WarmUpStatus> warmUp() {
+        return Mono.defer(() -> {
+            if (!running.compareAndSet(false, true)) {
+                return Mono.just(status());
+            }
+            itemsWritten.set(0);
+            Set<Long> warmedIds = ConcurrentHashMap.newKeySet();
+            startedAt = Instant.now();
+            finishedAt = null;
+            error = null;
+            log.info("Catalog warm-up started");
+
+            return databaseClient.sql(SELECT_ITEMS)
+                .filter((statement, next) -> next.execute(statement.fetchSize(fetchSize)))
+                .map((row, metadata) -> new Item(
+                    row.get("id", Long.class),
+                    row.get("title", String.class),
+                    row.get("description", String.class),
+                    row.get("price", BigDecimal.class),
+                    row.get("img_path", String.class))
+                    .setVersion(row.get("version", Long.class)))
+                .all()
+                .doOnNext(item -> warmedIds.add(item.getId()))
+                .buffer(batchSize)
+                .flatMap(cacheLoader::saveAll, concurrency)
+                .doOnNext(written -> log.debug("Catalog warm-up progress: {}", itemsWritten.addAndGet(written)))
+                .then(Mono.defer(() -> cacheLoader.evictDeleted(warmedIds)))
+                .then(Mono.defer(() -> cacheLoader.resetItemsCount(itemsWritten.get())))
+                .then(Mono.defer(cacheLoader::markWarm))
+                .then(Mono.defer(nearCache::publishInvalidateAll))
+                .then(Mono.defer(catalogVersion::bump))
+                .doOnSuccess(done -> log.info("Catalog warm-up finished. Items: {}, items/s: {}",
+                    itemsWritten.get(), status().itemsPerSecond()))
+                .doOnError(e -> {
+                    error = e.getMessage();
+                    log.warn("Catalog warm-up failed after {} items", itemsWritten.get(), e);
+                })
+                .doOnTerminate(this::finish)
+                .doOnCancel(this::finish)
+                .then(Mono.fromSupplier(this::status))
+                .onErrorResume(e -> Mono.just(status()));
+        });
+    }
+
+    private void finish() {
+        finishedAt = Instant.now();
+        running.set(false);
+    }
+
+    /**
+     * Returns the progress of the current or the last warm-up.
+     *
+     * @return status of the warm-up
+     */
+    public WarmUpStatus status() {
+        Instant start = startedAt;
+        Instant end = finishedAt == null ? Instant.now() : finishedAt;
+        long written = itemsWritten.get();
+        double seconds = start == null ? 0 : Duration.between(start, end).toMillis() / 1000d;
+        double throughput = seconds > 0 ? written / seconds : 0;
+        return new WarmUpStatus(running.get(), written, start, finishedAt, throughput, error);
+    }
+
+    /**
+     * Returns true if the warm-up is switched off, so the cache is expected to be populated lazily.
+     *
+     * @return true if the startup warm-up is disabled
+     */
+    public boolean isDisabled() {
+        return !enabled;
+    }
+}
@@ -0,0 +1,104 @@
+package org.javaprojects.onlinestore.services;
+
+import org.javaprojects.onlinestore.entities.Item;
+import org.javaprojects.onlinestore.models.ItemModel;
+import org.javaprojects.onlinestore.models.ItemRequest;
+import org.javaprojects.onlinestore.repositories.ItemsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Service class for managing the items of the catalog.
+ * Changes are written to the database in one transaction and then through to the Redis cache,
+ * so the catalog stays consistent without rebuilding the cache.
+ */
+@Service
+public class ItemAdminService {
+    private static final Logger log = LoggerFactory.getLogger(ItemAdminService.class);
+    private final ItemsRepository itemRepository;
+    private final CacheLoader cacheLoader;
+    private final CatalogVersion catalogVersion;
+    private final TransactionalOperator transactionalOperator;
+
+    public ItemAdminService(ItemsRepository itemRepository,
+        CacheLoader cacheLoader,
+        CatalogVersion catalogVersion,
+        TransactionalOperator transactionalOperator) {
+        this.itemRepository = itemRepository;
+        this.cacheLoader = cacheLoader;
+        this.catalogVersion = catalogVersion;
+        this.transactionalOperator = transactionalOperator;
+    }
+
+    /**
+     * Creates the items without an ID and creates or updates the items with an ID.
+     * The cache is written only after the transaction commits, each item replacing its hash and index entries atomically.
+     *
+     * @param requests the items to save
+     * @return a Flux of ItemModel with the IDs and versions of the saved items, in the order of the requests
+     */
+    public Flux<ItemModel> upsertItems(List<ItemRequest> requests) {
+        log.debug("Upserting items: {}", requests.size());
+        return Flux.fromIterable(requests)
+            .concatMap(this::write)
+            .concatWith(syncIdSequence(requests).then(Mono.<Item>empty()))
+            .as(transactionalOperator::transactional)
+            .collectList()
+            .flatMapMany(items -> Flux.fromIterable(items)
+                .concatMap(item -> cacheLoader.replace(item).thenReturn(item))
+                .concatWith(refreshCatalog().then(Mono.<Item>empty())))
+            .map(item -> new ItemModel(item, 0));
+    }
+
+    /**
+     * Deletes the items and evicts them from the cache.
+     * Carts and orders referencing the items are deleted with them.
+     *
+     * @param ids the IDs of the items to delete
+     * @return a Flux of the IDs of the deleted items, unknown IDs are skipped
+     */
+    public Flux<Long> deleteItems(List<Long> ids) {
+        log.debug("Deleting items: {}", ids);
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        return itemRepository.deleteByIds(ids)
+            .as(transactionalOperator::transactional)
+            .collectList()
+            .flatMapMany(deleted -> Flux.fromIterable(deleted)
+                .concatMap(id -> cacheLoader.evict(id).thenReturn(id))
+                .concatWith(refreshCatalog().then(Mono.<Long>empty())));
+    }
+
+    private Mono<Item> write(ItemRequest request) {
+        return request.id() == null
+            ? itemRepository.insertItem(request.title(), request.description(), request.price(), request.imgPath())
+            : itemRepository.upsertItem(request.id(), request.title(), request.description(), request.price(),
+                request.imgPath());
+    }
+
+    /**
+     * Moves the ID sequence past the highest explicit ID of the requests, requests without IDs leave it alone.
+     */
+    private Mono<Void> syncIdSequence(List<ItemRequest> requests) {
+        return requests.stream()
+            .map(ItemRequest::id)
+            .filter(Objects::nonNull)
+            .max(Long::compare)
+            .map(id -> itemRepository.syncIdSequence(id).then())
+            .orElse(Mono.empty());
+    }
+
+    private Mono<Void> refreshCatalog() {
+        return cacheLoader.refreshItemsCount()
+            .then(catalogVersion.bump())
+            .then();
+    }
+}
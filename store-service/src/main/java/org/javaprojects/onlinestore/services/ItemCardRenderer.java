@@ -0,0 +1,68 @@
+package org.javaprojects.onlinestore.services;
+
+import org.javaprojects.onlinestore.models.ItemCard;
+import org.javaprojects.onlinestore.models.ItemModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.Context;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Renders the static part of the item cards shown on the catalog page.
+ * The image, the title, the price and the description of a card do not depend on the user,
+ * so they are rendered once per item version and the rendered HTML is reused by every request.
+ * Only the cart count is left to the page template.
+ * The price is formatted with the locale of the request, so cards are cached per item version and locale.
+ * Items without a known version are rendered every time, since a changed item could not be told apart.
+ */
+@Component
+public class ItemCardRenderer
+{
+    private static final Logger log = LoggerFactory.getLogger(ItemCardRenderer.class);
+    private static final String TEMPLATE = "fragments/item-card";
+
+    private record CardKey(long id, long version, Locale locale) {}
+
+    private final ITemplateEngine templateEngine;
+    private final LruCache<CardKey, String> cards;
+
+    public ItemCardRenderer(ITemplateEngine templateEngine,
+        @Value("${catalog.card-cache.max-size:2000}") int maxSize) {
+        this.templateEngine = templateEngine;
+        this.cards = new LruCache<>(maxSize, Duration.ZERO);
+    }
+
+    /**
+     * Returns the card of the item, rendering its static part if it is not cached for the item version and locale.
+     *
+     * @param item   item to show
+     * @param locale locale of the request, the default locale of the server when the request has none
+     * @return card of the item
+     */
+    public ItemCard render(ItemModel item, Locale locale) {
+        if (locale == null) {
+            locale = Locale.getDefault();
+        }
+        if (item.getVersion() == 0) {
+            return new ItemCard(item, renderHtml(item, locale));
+        }
+        CardKey key = new CardKey(item.getId(), item.getVersion(), locale);
+        String html = cards.get(key);
+        if (html == null) {
+            html = renderHtml(item, locale);
+            cards.put(key, html);
+            log.debug("Rendered card of item. ID: [{}], version: [{}]", item.getId(), item.getVersion());
+        }
+        return new ItemCard(item, html);
+    }
+
+    private String renderHtml(ItemModel item, Locale locale) {
+        return templateEngine.process(TEMPLATE, new Context(locale, Map.<String, Object>of("itemModel", item)));
+    }
+}
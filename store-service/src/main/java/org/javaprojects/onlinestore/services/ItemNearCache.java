@@ -0,0 +1,114 @@
+package org.javaprojects.onlinestore.services;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * In-process L1 cache of item hashes in front of Redis.
+ * Every instance subscribes to an invalidation channel, so a change of an item hash
+ * published by any instance evicts the local copy everywhere.
+ */
+@Component
+public class ItemNearCache
+{
+    private static final Logger log = LoggerFactory.getLogger(ItemNearCache.class);
+    public static final String INVALIDATION_CHANNEL = "catalog:invalidate";
+    public static final String INVALIDATE_ALL       = "*";
+
+    private final ReactiveRedisTemplate<String, String> redis;
+    private final LruCache<Long, Map<String, String>> items;
+    private Disposable subscription;
+
+    public ItemNearCache(ReactiveRedisTemplate<String, String> redis,
+        @Value("${catalog.near-cache.max-size:10000}") int maxSize,
+        @Value("${catalog.near-cache.ttl:PT5M}") Duration ttl)
+    {
+        this.redis = redis;
+        this.items = new LruCache<>(maxSize, ttl);
+    }
+
+    /**
+     * Returns the cached item hash.
+     * @param id ID of the item.
+     * @return immutable map of item properties or null if the item is not cached locally.
+     */
+    public Map<String, String> get(long id) {
+        return items.get(id);
+    }
+
+    /**
+     * Stores an immutable copy of the item hash.
+     * @param id ID of the item.
+     * @param item item properties.
+     * @return the stored immutable copy.
+     */
+    public Map<String, String> put(long id, Map<String, String> item) {
+        Map<String, String> copy = Map.copyOf(item);
+        items.put(id, copy);
+        return copy;
+    }
+
+    /**
+     * Notifies all instances that the item hash has changed.
+     * @param id ID of the changed item.
+     * @return Mono completing when the message is published.
+     */
+    public Mono<Void> publishInvalidation(long id) {
+        items.remove(id);
+        return redis.convertAndSend(INVALIDATION_CHANNEL, String.valueOf(id)).then();
+    }
+
+    /**
+     * Notifies all instances that any item hash may have changed.
+     * @return Mono completing when the message is published.
+     */
+    public Mono<Void> publishInvalidateAll() {
+        items.clear();
+        return redis.convertAndSend(INVALIDATION_CHANNEL, INVALIDATE_ALL).then();
+    }
+
+    /**
+     * Subscribes to the invalidation channel once the application is ready.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void subscribe() {
+        subscription = redis.listenToChannel(INVALIDATION_CHANNEL)
+            .map(ReactiveSubscription.Message::getMessage)
+            .doOnNext(this::onInvalidation)
+            .doOnError(e -> {
+                log.warn("Invalidation channel is lost. Dropping the near cache", e);
+                items.clear();
+            })
+            .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1)).maxBackoff(Duration.ofSeconds(30)))
+            .subscribe();
+    }
+
+    @PreDestroy
+    public void unsubscribe() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    private void onInvalidation(String message) {
+        log.debug("Near cache invalidation received: {}", message);
+        if (INVALIDATE_ALL.equals(message)) {
+            items.clear();
+        } else {
+            items.remove(Long.parseLong(message));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.javaprojects.onlinestore.services;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small bounded in-process cache with least-recently-used eviction.
+ * Entries may also expire after a fixed time to live. The cache is thread-safe.
+ *
+ * @param <K> type of keys
+ * @param <V> type of cached values
+ */
+public class LruCache<K, V>
+{
+    private record Slot<T>(T value, long expiresAt) {}
+
+    private final Map<K, Slot<V>> entries;
+    private final long ttlNanos;
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxSize maximum number of entries kept in memory
+     * @param ttl     time to live of an entry, zero means entries never expire
+     */
+    public LruCache(int maxSize, Duration ttl)
+    {
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Slot<V>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value or null if it is absent or expired.
+     *
+     * @param key key of the entry
+     * @return cached value or null
+     */
+    public synchronized V get(K key) {
+        Slot<V> slot = entries.get(key);
+        if (slot == null) {
+            return null;
+        }
+        if (ttlNanos > 0 && System.nanoTime() - slot.expiresAt() > 0) {
+            entries.remove(key);
+            return null;
+        }
+        return slot.value();
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Slot<>(value, System.nanoTime() + ttlNanos));
+    }
+
+    public synchronized void remove(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
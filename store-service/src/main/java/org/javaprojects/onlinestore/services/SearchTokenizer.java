@@ -0,0 +1,35 @@
+package org.javaprojects.onlinestore.services;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Splits catalog texts and search queries into normalized terms of the search index.
+ * Terms are lower-cased sequences of letters and digits in any alphabet.
+ */
+public final class SearchTokenizer
+{
+    private static final Pattern SEPARATOR = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+    private SearchTokenizer() {
+        // Utility class
+    }
+
+    /**
+     * Tokenizes the given texts.
+     *
+     * @param texts texts to tokenize, null values are ignored
+     * @return sorted set of unique terms
+     */
+    public static Set<String> tokenize(String... texts) {
+        return Arrays.stream(texts)
+            .filter(text -> text != null && !text.isBlank())
+            .flatMap(text -> SEPARATOR.splitAsStream(text.toLowerCase(Locale.ROOT)))
+            .filter(term -> !term.isEmpty())
+            .collect(Collectors.toCollection(TreeSet::new));
+    }
+}
@@ -0,0 +1,42 @@
+package org.javaprojects.onlinestore.services;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Coalesces concurrent loads of the same key.
+ * While a load is in flight every other subscriber for the key shares its result
+ * instead of starting its own load.
+ *
+ * @param <K> type of keys
+ * @param <V> type of loaded values
+ */
+public class SingleFlight<K, V>
+{
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the loader for the key unless a load of the same key is already running.
+     *
+     * @param key    key of the load
+     * @param loader supplier of the load, invoked at most once per flight
+     * @return Mono sharing the result of the flight
+     */
+    public Mono<V> execute(K key, Supplier<Mono<V>> loader) {
+        return Mono.defer(() -> inFlight.computeIfAbsent(key, k -> loader.get()
+            .doFinally(signal -> inFlight.remove(k))
+            .cache()));
+    }
+
+    /**
+     * Returns the number of loads in flight.
+     *
+     * @return number of keys being loaded
+     */
+    public int size() {
+        return inFlight.size();
+    }
+}
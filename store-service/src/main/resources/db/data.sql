@@ -10,7 +10,8 @@ ARRAY['ROLE_ADMIN']
  ARRAY ['ROLE_USER'])
 ON CONFLICT (username) DO NOTHING;
 
-INSERT INTO items (title, description, price, img_path) VALUES
+INSERT INTO items (title, description, price, img_path)
+SELECT title, description, price, img_path FROM (VALUES
 ('Item 1', 'Description for item 1', 10.99, '/images/item1.jpg'),
 ('Item 2', 'Description for item 2', 15.49, '/images/item2.jpg'),
 ('Item 3', 'Description for item 3', 7.99, '/images/item3.jpg'),
@@ -20,4 +21,6 @@ INSERT INTO items (title, description, price, img_path) VALUES
 ('Item 7', 'Description for item 7', 8.75, '/images/item7.jpg'),
 ('Item 8', 'Description for item 8', 14.99, '/images/item8.jpg'),
 ('Item 9', 'Description for item 9', 11.25, '/images/item9.jpg'),
-('Item 10', 'Description for item 10', 9.99, '/images/item10.jpg');
+('Item 10', 'Description for item 10', 9.99, '/images/item10.jpg')
+) AS seed (title, description, price, img_path)
+WHERE NOT EXISTS (SELECT 1 FROM items);
@@ -14,6 +14,54 @@ CREATE TABLE IF NOT EXISTS items(
     img_path VARCHAR(256) NOT NULL
 );
 
+ALTER TABLE items ADD COLUMN IF NOT EXISTS search_vector tsvector
+    GENERATED ALWAYS AS (
+        setweight(to_tsvector('simple', title), 'A') || setweight(to_tsvector('simple', description), 'B')
+    ) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_items_search_vector ON items USING GIN (search_vector);
+
+ALTER TABLE items ADD COLUMN IF NOT EXISTS version BIGINT NOT NULL DEFAULT 1;
+
+CREATE OR REPLACE FUNCTION items_next_version() RETURNS trigger AS '
+BEGIN
+    NEW.version := OLD.version + 1;
+    RETURN NEW;
+END;
+' LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_items_version ON items;
+CREATE TRIGGER trg_items_version BEFORE UPDATE ON items
+    FOR EACH ROW
+    WHEN ((OLD.title, OLD.description, OLD.price, OLD.img_path)
+        IS DISTINCT FROM (NEW.title, NEW.description, NEW.price, NEW.img_path))
+    EXECUTE FUNCTION items_next_version();
+
+CREATE OR REPLACE FUNCTION items_notify_change() RETURNS trigger AS '
+BEGIN
+    IF current_setting(''catalog.import'', true) = ''on'' THEN
+        RETURN NULL;
+    END IF;
+    IF TG_OP = ''DELETE'' THEN
+        PERFORM pg_notify(''items_changed'', TG_OP || '':'' || OLD.id);
+        RETURN OLD;
+    END IF;
+    PERFORM pg_notify(''items_changed'', TG_OP || '':'' || NEW.id);
+    RETURN NEW;
+END;
+' LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_items_notify ON items;
+CREATE TRIGGER trg_items_notify AFTER INSERT OR DELETE ON items
+    FOR EACH ROW
+    EXECUTE FUNCTION items_notify_change();
+
+DROP TRIGGER IF EXISTS trg_items_notify_update ON items;
+CREATE TRIGGER trg_items_notify_update AFTER UPDATE ON items
+    FOR EACH ROW
+    WHEN (OLD.version IS DISTINCT FROM NEW.version)
+    EXECUTE FUNCTION items_notify_change();
+
 CREATE TABLE IF NOT EXISTS orders(
     id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
     total DECIMAL(10, 2) NOT NULL,
@@ -31,9 +79,37 @@ CREATE TABLE IF NOT EXISTS order_items (
 );
 
 CREATE TABLE IF NOT EXISTS cart (
-    item_id BIGINT NOT NULL PRIMARY KEY,
+    item_id BIGINT NOT NULL,
     quantity INTEGER NOT NULL,
     user_id BIGINT NOT NULL,
+    PRIMARY KEY (user_id, item_id),
     CONSTRAINT fk_cart_item FOREIGN KEY (item_id) REFERENCES items(id) ON DELETE CASCADE,
     CONSTRAINT fk_cart_user FOREIGN KEY (user_id) REFERENCES app_user(id) ON DELETE CASCADE
 );
+
+DO '
+DECLARE
+    old_key NAME;
+BEGIN
+    SELECT conname INTO old_key FROM pg_constraint
+    WHERE conrelid = ''cart''::regclass AND contype = ''p'' AND array_length(conkey, 1) = 1;
+    IF old_key IS NOT NULL THEN
+        EXECUTE ''ALTER TABLE cart DROP CONSTRAINT '' || quote_ident(old_key);
+        ALTER TABLE cart ADD PRIMARY KEY (user_id, item_id);
+    END IF;
+END;
+';
+
+CREATE INDEX IF NOT EXISTS idx_cart_item_id ON cart (item_id);
+
+CREATE TABLE IF NOT EXISTS import_jobs(
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    format VARCHAR(16) NOT NULL,
+    status VARCHAR(16) NOT NULL,
+    rows_committed BIGINT NOT NULL DEFAULT 0,
+    resumed_from BIGINT NOT NULL DEFAULT 0,
+    started_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+    finished_at TIMESTAMP WITH TIME ZONE,
+    error TEXT
+);
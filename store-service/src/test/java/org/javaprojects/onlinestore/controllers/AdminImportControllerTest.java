@@ -0,0 +1,106 @@
+package org.javaprojects.onlinestore.controllers;
+
+import org.javaprojects.onlinestore.enums.ImportFormat;
+import org.javaprojects.onlinestore.helpers.DummyOauth2TestConfiguration;
+import org.javaprojects.onlinestore.models.ImportStatus;
+import org.javaprojects.onlinestore.services.CatalogImporter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers.csrf;
+
+@ActiveProfiles("test")
+@WebFluxTest(controllers = AdminImportController.class)
+@ContextConfiguration(classes = {AdminImportController.class, DummyOauth2TestConfiguration.class})
+class AdminImportControllerTest {
+    @Autowired
+    private WebTestClient webTestClient;
+    @MockitoBean
+    private CatalogImporter catalogImporter;
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    void importItems() {
+        Instant now = Instant.now();
+        when(catalogImporter.importItems(any(), eq(ImportFormat.CSV), isNull()))
+            .thenReturn(Mono.just(new ImportStatus(3L, "DONE", 2, 0, now, now, 2000, null)));
+
+        webTestClient
+            .mutateWith(csrf())
+            .post()
+            .uri("/api/admin/imports")
+            .contentType(MediaType.TEXT_PLAIN)
+            .bodyValue("title,description,price,img_path\nItem,Description,1.99,/images/item.jpg\n")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.jobId").isEqualTo(3)
+            .jsonPath("$.status").isEqualTo("DONE")
+            .jsonPath("$.rowsCommitted").isEqualTo(2);
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    void importInvalidItems() {
+        Instant now = Instant.now();
+        when(catalogImporter.importItems(any(), eq(ImportFormat.CSV), isNull()))
+            .thenReturn(Mono.just(new ImportStatus(4L, "FAILED", 0, 0, now, now, 0,
+                CatalogImporter.INVALID_ITEM + "1: expected 4 fields, found 2")));
+
+        webTestClient
+            .mutateWith(csrf())
+            .post()
+            .uri("/api/admin/imports")
+            .contentType(MediaType.TEXT_PLAIN)
+            .bodyValue("Item,Description\n")
+            .exchange()
+            .expectStatus().isEqualTo(422)
+            .expectBody()
+            .jsonPath("$.jobId").isEqualTo(4)
+            .jsonPath("$.status").isEqualTo("FAILED");
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    void importFailedInDatabase() {
+        Instant now = Instant.now();
+        when(catalogImporter.importItems(any(), eq(ImportFormat.CSV), isNull()))
+            .thenReturn(Mono.just(new ImportStatus(5L, "FAILED", 5000, 0, now, now, 1000, "connection reset")));
+
+        webTestClient
+            .mutateWith(csrf())
+            .post()
+            .uri("/api/admin/imports")
+            .contentType(MediaType.TEXT_PLAIN)
+            .bodyValue("Item,Description,1.99,/images/item.jpg\n")
+            .exchange()
+            .expectStatus().is5xxServerError()
+            .expectBody()
+            .jsonPath("$.jobId").isEqualTo(5)
+            .jsonPath("$.rowsCommitted").isEqualTo(5000);
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    void getUnknownJob() {
+        when(catalogImporter.status(42L)).thenReturn(Mono.empty());
+
+        webTestClient
+            .get()
+            .uri("/api/admin/imports/42")
+            .exchange()
+            .expectStatus().isNotFound();
+    }
+}
@@ -0,0 +1,112 @@
+package org.javaprojects.onlinestore.controllers;
+
+import org.javaprojects.onlinestore.helpers.DummyOauth2TestConfiguration;
+import org.javaprojects.onlinestore.models.ItemModel;
+import org.javaprojects.onlinestore.models.ItemRequest;
+import org.javaprojects.onlinestore.services.ItemAdminService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers.csrf;
+
+@ActiveProfiles("test")
+@WebFluxTest(controllers = AdminItemsController.class)
+@ContextConfiguration(classes = {AdminItemsController.class, DummyOauth2TestConfiguration.class})
+class AdminItemsControllerTest {
+    @Autowired
+    private WebTestClient webTestClient;
+    @MockitoBean
+    private ItemAdminService itemAdminService;
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    void upsertItems() {
+        ItemModel saved = new ItemModel(7L, "Title", "Description", new BigDecimal("9.99"), "path.jpg", 0)
+            .setVersion(2);
+        when(itemAdminService.upsertItems(anyList())).thenReturn(Flux.just(saved));
+
+        webTestClient
+            .mutateWith(csrf())
+            .put()
+            .uri("/api/admin/items")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(List.of(new ItemRequest(7L, "Title", "Description", new BigDecimal("9.99"), "path.jpg")))
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$[0].id").isEqualTo(7)
+            .jsonPath("$[0].version").isEqualTo(2);
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    void upsertTooManyItems() {
+        ItemRequest item = new ItemRequest(null, "Title", "Description", new BigDecimal("9.99"), "path.jpg");
+
+        webTestClient
+            .mutateWith(csrf())
+            .put()
+            .uri("/api/admin/items")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(Collections.nCopies(501, item))
+            .exchange()
+            .expectStatus().isBadRequest();
+
+        verify(itemAdminService, never()).upsertItems(anyList());
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    void upsertInvalidItems() {
+        webTestClient
+            .mutateWith(csrf())
+            .put()
+            .uri("/api/admin/items")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(List.of(new ItemRequest(null, " ", "Description", new BigDecimal("9.99"), "path.jpg")))
+            .exchange()
+            .expectStatus().isBadRequest();
+
+        webTestClient
+            .mutateWith(csrf())
+            .put()
+            .uri("/api/admin/items")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(List.of(new ItemRequest(7L, "Title", "Description", new BigDecimal("-1.00"), "path.jpg")))
+            .exchange()
+            .expectStatus().isBadRequest();
+
+        verify(itemAdminService, never()).upsertItems(anyList());
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    void deleteItems() {
+        when(itemAdminService.deleteItems(List.of(1L, 2L))).thenReturn(Flux.just(1L));
+
+        webTestClient
+            .mutateWith(csrf())
+            .delete()
+            .uri("/api/admin/items?ids=1,2")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$[0]").isEqualTo(1);
+    }
+}
@@ -0,0 +1,131 @@
+package org.javaprojects.onlinestore.controllers;
+
+import org.javaprojects.onlinestore.helpers.DummyOauth2TestConfiguration;
+import org.javaprojects.onlinestore.models.CartChange;
+import org.javaprojects.onlinestore.models.CartContents;
+import org.javaprojects.onlinestore.models.ItemModel;
+import org.javaprojects.onlinestore.security.AuthUser;
+import org.javaprojects.onlinestore.services.CatalogService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers.csrf;
+import static org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers.mockAuthentication;
+
+@ActiveProfiles("test")
+@WebFluxTest(controllers = CartApiController.class)
+@ContextConfiguration(classes = {CartApiController.class, DummyOauth2TestConfiguration.class})
+class CartApiControllerTest {
+    @Autowired
+    private WebTestClient webTestClient;
+    @MockitoBean
+    private CatalogService catalogService;
+
+    @BeforeEach
+    void setUp() {
+        AuthUser user = new AuthUser(1L, "test", "pwd", true, List.of("ROLE_USER"));
+        webTestClient = webTestClient
+            .mutateWith(csrf())
+            .mutateWith(mockAuthentication(new UsernamePasswordAuthenticationToken(
+                user, "pwd", user.getAuthorities())));
+    }
+
+    @Test
+    void updateItems() {
+        ItemModel item = new ItemModel(3L, "Title", "Description", new BigDecimal("2.50"), "path.jpg", 4);
+        when(catalogService.findUnknownItemIds(anyCollection())).thenReturn(Mono.just(List.of()));
+        when(catalogService.updateBasket(anyList(), any(AuthUser.class)))
+            .thenReturn(Mono.just(CartContents.of(List.of(item))));
+
+        webTestClient
+            .post()
+            .uri("/api/cart/items")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(List.of(CartChange.add(3L, 2L), CartChange.set(3L, 4L)))
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.items[0].id").isEqualTo(3)
+            .jsonPath("$.positions").isEqualTo(1)
+            .jsonPath("$.total").isEqualTo(10.0);
+    }
+
+    @Test
+    void updateItemsWithIncompleteChange() {
+        webTestClient
+            .post()
+            .uri("/api/cart/items")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(List.of(new CartChange(3L, 1L, 1L)))
+            .exchange()
+            .expectStatus().isBadRequest();
+
+        verify(catalogService, never()).updateBasket(anyList(), any(AuthUser.class));
+    }
+
+    @Test
+    void updateItemsWithInvalidChange() {
+        webTestClient
+            .post()
+            .uri("/api/cart/items")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(List.of(new CartChange(null, 1L, null)))
+            .exchange()
+            .expectStatus().isBadRequest();
+
+        webTestClient
+            .post()
+            .uri("/api/cart/items")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(List.of(CartChange.set(3L, -1L)))
+            .exchange()
+            .expectStatus().isBadRequest();
+
+        verify(catalogService, never()).updateBasket(anyList(), any(AuthUser.class));
+    }
+
+    @Test
+    void updateItemsWithUnknownItem() {
+        when(catalogService.findUnknownItemIds(List.of(3L, 99L))).thenReturn(Mono.just(List.of(99L)));
+
+        webTestClient
+            .post()
+            .uri("/api/cart/items")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(List.of(CartChange.add(3L, 1L), CartChange.set(99L, 2L), CartChange.set(98L, 0L)))
+            .exchange()
+            .expectStatus().isNotFound();
+
+        verify(catalogService, never()).updateBasket(anyList(), any(AuthUser.class));
+    }
+
+    @Test
+    void updateTooManyItems() {
+        webTestClient
+            .post()
+            .uri("/api/cart/items")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue(Collections.nCopies(501, CartChange.add(3L, 1L)))
+            .exchange()
+            .expectStatus().isBadRequest();
+
+        verify(catalogService, never()).updateBasket(anyList(), any(AuthUser.class));
+    }
+}
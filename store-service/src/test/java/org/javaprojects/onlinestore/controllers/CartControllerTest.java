@@ -4,6 +4,7 @@ import org.javaprojects.onlinestore.entities.Item;
 import org.javaprojects.onlinestore.helpers.DummyOauth2TestConfiguration;
 import org.javaprojects.onlinestore.helpers.RedisTestContainer;
 import org.javaprojects.onlinestore.infrastructure.PaymentHealthClient;
+import org.javaprojects.onlinestore.models.CartSummary;
 import org.javaprojects.onlinestore.models.ItemModel;
 import org.javaprojects.onlinestore.repositories.CartRepository;
 import org.javaprojects.onlinestore.security.AuthUser;
@@ -34,6 +35,7 @@ import java.math.BigDecimal;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers.csrf;
@@ -63,6 +65,7 @@ class CartControllerTest extends RedisTestContainer
         when(catalogService.updateCountInBasket(anyLong(), anyString(), any(AuthUser.class)))
             .thenReturn(Mono.empty());
         when(catalogService.getItemsInBasket()).thenReturn(Flux.fromIterable(List.of(itemModel1, itemModel2)));
+        when(catalogService.getBasketSummary()).thenReturn(Mono.just(new CartSummary(2, 79.97)));
     }
 
     @Test
@@ -76,6 +79,7 @@ class CartControllerTest extends RedisTestContainer
             .expectStatus().isOk()
             .expectBody(String.class).consumeWith(response -> {
                    assertNotNull(response.getResponseBody());
+                   assertTrue(response.getResponseBody().contains("Test Title2"));
             });
     }
 
@@ -0,0 +1,138 @@
+package org.javaprojects.onlinestore.controllers;
+
+import org.javaprojects.onlinestore.helpers.DummyOauth2TestConfiguration;
+import org.javaprojects.onlinestore.models.CatalogPage;
+import org.javaprojects.onlinestore.models.CatalogQuery;
+import org.javaprojects.onlinestore.models.ItemModel;
+import org.javaprojects.onlinestore.models.TitleSuggestion;
+import org.javaprojects.onlinestore.services.CatalogService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ActiveProfiles("test")
+@WebFluxTest(controllers = CatalogApiController.class)
+@ContextConfiguration(classes = {CatalogApiController.class, DummyOauth2TestConfiguration.class})
+class CatalogApiControllerTest {
+    @Autowired
+    private WebTestClient webTestClient;
+    @MockitoBean
+    private CatalogService catalogService;
+
+    @Test
+    @WithMockUser
+    void getItems() {
+        when(catalogService.findPage(any(CatalogQuery.class)))
+            .thenReturn(Mono.just(new CatalogPage(List.of(1L), 0, true, false, "next", null)));
+        when(catalogService.findAllItems(anyList())).thenReturn(Flux.just(item(1L)));
+        when(catalogService.getItemsCount(any(CatalogQuery.class))).thenReturn(Mono.just(31L));
+
+        webTestClient
+            .get()
+            .uri("/api/items?sort=PRICE&pageSize=1")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.items[0].id").isEqualTo(1)
+            .jsonPath("$.paging.nextCursor").isEqualTo("next")
+            .jsonPath("$.total").isEqualTo(31);
+    }
+
+    @Test
+    @WithMockUser
+    void streamItems() {
+        when(catalogService.findPage(any(CatalogQuery.class)))
+            .thenReturn(Mono.just(new CatalogPage(List.of(1L, 2L), 0, false, false, null, null)));
+        when(catalogService.findAllItems(anyList())).thenReturn(Flux.just(item(1L), item(2L)));
+
+        webTestClient
+            .get()
+            .uri("/api/items")
+            .accept(MediaType.APPLICATION_NDJSON)
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+            .expectBodyList(ItemModel.class)
+            .hasSize(2);
+    }
+
+    @Test
+    @WithMockUser
+    void getItemsByIds() {
+        when(catalogService.findAllItems(eq(List.of(2L, 1L)))).thenReturn(Flux.just(item(2L), item(1L)));
+
+        webTestClient
+            .get()
+            .uri("/api/items?ids=2,1")
+            .accept(MediaType.APPLICATION_JSON)
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$[0].id").isEqualTo(2)
+            .jsonPath("$[1].id").isEqualTo(1);
+    }
+
+    @Test
+    @WithMockUser
+    void getUnknownItem() {
+        when(catalogService.getItemById(anyLong()))
+            .thenReturn(Mono.error(new IllegalStateException("Item not found by id 42")));
+
+        webTestClient
+            .get()
+            .uri("/api/items/42")
+            .exchange()
+            .expectStatus().isNotFound();
+    }
+
+    @Test
+    @WithMockUser
+    void suggest() {
+        when(catalogService.suggestTitles(eq("Lap"), eq(5)))
+            .thenReturn(Mono.just(List.of(new TitleSuggestion(2L, "Laptop"))));
+
+        webTestClient
+            .get()
+            .uri("/api/items/suggest?q=Lap&limit=5")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$[0].id").isEqualTo(2)
+            .jsonPath("$[0].title").isEqualTo("Laptop");
+    }
+
+    @Test
+    @WithMockUser
+    void suggestBlankPrefix() {
+        webTestClient
+            .get()
+            .uri("/api/items/suggest?q=")
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody()
+            .jsonPath("$.length()").isEqualTo(0);
+
+        verify(catalogService, never()).suggestTitles(anyString(), anyInt());
+    }
+
+    private static ItemModel item(long id) {
+        return new ItemModel(id, "Title " + id, "Description " + id, new BigDecimal("9.99"), "path.jpg", 0);
+    }
+}
@@ -1,10 +1,12 @@
 package org.javaprojects.onlinestore.controllers;
 
-import org.javaprojects.onlinestore.enums.Sorting;
 import org.javaprojects.onlinestore.helpers.DummyOauth2TestConfiguration;
+import org.javaprojects.onlinestore.models.CatalogPage;
+import org.javaprojects.onlinestore.models.CatalogQuery;
 import org.javaprojects.onlinestore.models.ItemModel;
 import org.javaprojects.onlinestore.security.AuthUser;
 import org.javaprojects.onlinestore.services.CatalogService;
+import org.javaprojects.onlinestore.services.ItemCardRenderer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
@@ -27,13 +29,14 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers.csrf;
 
 @ActiveProfiles("test")
 @WebFluxTest(controllers = CatalogController.class)
-@ContextConfiguration(classes = {CatalogController.class, DummyOauth2TestConfiguration.class})
+@ContextConfiguration(classes = {CatalogController.class, ItemCardRenderer.class, DummyOauth2TestConfiguration.class})
 class CatalogControllerTest {
     @Autowired
     private WebTestClient webTestClient;
@@ -51,13 +54,42 @@ class CatalogControllerTest {
             .expectHeader().location("/main/items");
     }
 
+    @Test
+    @WithMockUser
+    void getAllProductsWithCursor() {
+        ItemModel item = new ItemModel(2L, "Next Title", "Next Description", new BigDecimal("29.99"), "next-path.jpg", 0);
+        when(catalogService.findPage(any(CatalogQuery.class)))
+            .thenReturn(Mono.just(new CatalogPage(List.of(2L), 3, true, true, "next", "previous")));
+        when(catalogService.findAllItems(anyList())).thenReturn(Flux.just(item));
+        when(catalogService.getItemsCount(any(CatalogQuery.class))).thenReturn(Mono.just(31L));
+        webTestClient
+            .get()
+            .uri(uriBuilder -> uriBuilder
+                .path("/main/items")
+                .queryParam("sort", "PRICE")
+                .queryParam("cursor", "cursor")
+                .build())
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody(String.class)
+            .consumeWith(response -> {
+                String body = response.getResponseBody();
+                assertNotNull(body);
+                assertTrue(body.contains("value=\"next\""));
+                assertTrue(body.contains("value=\"previous\""));
+                assertTrue(body.contains("Next Title"));
+            });
+    }
+
     @Test
     @WithMockUser
     void getAllProductsWithDefaultParameters() {
         ItemModel item = new ItemModel(1L, "Test Title", "Test Description", new BigDecimal("19.99"), "test-path.jpg", 0);
         List<ItemModel> itemList = Collections.singletonList(item);
-        when(catalogService.findAllItems(anyInt(), anyInt(), anyString(), any(Sorting.class))).thenReturn(Flux.fromIterable(itemList));
-        when(catalogService.getItemsCount()).thenReturn(Mono.just(10L));
+        when(catalogService.findPage(any(CatalogQuery.class)))
+            .thenReturn(Mono.just(new CatalogPage(List.of(1L), 1, false, true, null, null)));
+        when(catalogService.findAllItems(anyList())).thenReturn(Flux.fromIterable(itemList));
+        when(catalogService.getItemsCount(any(CatalogQuery.class))).thenReturn(Mono.just(10L));
         webTestClient
             .get()
             .uri(uriBuilder -> uriBuilder
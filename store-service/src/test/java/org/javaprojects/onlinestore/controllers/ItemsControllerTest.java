@@ -14,6 +14,7 @@ import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWeb
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers;
 import org.springframework.test.context.ActiveProfiles;
@@ -73,6 +74,26 @@ class ItemsControllerTest extends RedisTestContainer
             });
     }
 
+    @Test
+    void getItemById_notModified() {
+        String etag = webTestClient.get()
+            .uri("/items/1")
+            .exchange()
+            .expectStatus().isOk()
+            .expectHeader().exists(HttpHeaders.ETAG)
+            .expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT_LANGUAGE)
+            .returnResult(String.class)
+            .getResponseHeaders().getETag();
+
+        webTestClient.get()
+            .uri("/items/1")
+            .header(HttpHeaders.IF_NONE_MATCH, etag)
+            .exchange()
+            .expectStatus().isNotModified()
+            .expectHeader().valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT_LANGUAGE)
+            .expectBody().isEmpty();
+    }
+
     @Test
     void updateItemCountInBasket_plusAction() {
         webTestClient
@@ -27,6 +27,7 @@ import java.math.BigDecimal;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.springframework.security.test.web.reactive.server.SecurityMockServerConfigurers.csrf;
@@ -61,13 +62,15 @@ class OrdersControllerTest {
         OrderModel orderModel2 = new OrderModel(1L, List.of(new ItemModel(item1, 1), new ItemModel(item2, 2)), new BigDecimal("79.97"));
         Flux<OrderModel> orderModelList = Flux.fromIterable(List.of(orderModel, orderModel2));
         Mockito.when(catalogService.findAllOrders()).thenReturn(orderModelList);
+        Mockito.when(catalogService.hasOrders()).thenReturn(Mono.just(true));
         webTestClient.get()
                 .uri("/orders")
                 .exchange()
                 .expectStatus().isOk()
-                .expectBody()
+                .expectBody(String.class)
                 .consumeWith(response -> {
                     assertNotNull(response.getResponseBody());
+                    assertTrue(response.getResponseBody().contains("Test Title2"));
                 });
     }
 
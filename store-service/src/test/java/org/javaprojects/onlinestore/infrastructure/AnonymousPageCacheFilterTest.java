@@ -0,0 +1,94 @@
+package org.javaprojects.onlinestore.infrastructure;
+
+import org.javaprojects.onlinestore.services.CatalogVersion;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseCookie;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AnonymousPageCacheFilterTest {
+
+    private final AtomicLong version = new AtomicLong(1);
+    private final AtomicInteger renders = new AtomicInteger();
+    private AnonymousPageCacheFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        CatalogVersion catalogVersion = mock(CatalogVersion.class);
+        when(catalogVersion.current()).thenAnswer(invocation -> Mono.just(version.get()));
+        filter = new AnonymousPageCacheFilter(catalogVersion, true, 100, Duration.ofMinutes(10));
+    }
+
+    @Test
+    void anonymousPageIsRenderedOnce() {
+        assertEquals("page 1", get(MockServerHttpRequest.get("/main/items?page=2"), render()));
+        assertEquals("page 1", get(MockServerHttpRequest.get("/main/items?page=2"), render()));
+        assertEquals(1, renders.get());
+
+        assertEquals("page 2", get(MockServerHttpRequest.get("/main/items?page=3"), render()));
+        assertEquals(2, renders.get());
+    }
+
+    @Test
+    void keyIncludesVersionAndLocale() {
+        get(MockServerHttpRequest.get("/items/1").acceptLanguageAsLocales(Locale.ENGLISH), render());
+        assertEquals("page 2", get(MockServerHttpRequest.get("/items/1").acceptLanguageAsLocales(Locale.GERMAN), render()));
+        assertEquals("page 1", get(MockServerHttpRequest.get("/items/1").acceptLanguageAsLocales(Locale.ENGLISH), render()));
+
+        version.incrementAndGet();
+        assertEquals("page 3", get(MockServerHttpRequest.get("/items/1").acceptLanguageAsLocales(Locale.ENGLISH), render()));
+        assertEquals(3, renders.get());
+    }
+
+    @Test
+    void pageSettingCookieIsNotStored() {
+        WebFilterChain settingCookie = exchange -> {
+            exchange.getResponse().addCookie(ResponseCookie.from("SESSION", "new").build());
+            return render().filter(exchange);
+        };
+        get(MockServerHttpRequest.get("/main/items"), settingCookie);
+        assertEquals("page 2", get(MockServerHttpRequest.get("/main/items"), render()));
+        assertEquals(2, renders.get());
+    }
+
+    @Test
+    void requestWithSessionIsNotCached() {
+        get(MockServerHttpRequest.get("/main/items").cookie(new HttpCookie("SESSION", "user")), render());
+        assertEquals("page 2", get(MockServerHttpRequest.get("/main/items").cookie(new HttpCookie("SESSION", "user")), render()));
+        assertEquals("page 3", get(MockServerHttpRequest.get("/main/items"), render()));
+        assertEquals(3, renders.get());
+    }
+
+    /**
+     * Renders a page numbered by the count of renders.
+     */
+    private WebFilterChain render() {
+        return exchange -> {
+            byte[] body = ("page " + renders.incrementAndGet()).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponse().getHeaders().setContentType(MediaType.TEXT_HTML);
+            return exchange.getResponse().writeWith(Mono.just(exchange.getResponse().bufferFactory().wrap(body)));
+        };
+    }
+
+    private String get(MockServerHttpRequest.BaseBuilder<?> request, WebFilterChain chain) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(request.header(HttpHeaders.ACCEPT, MediaType.TEXT_HTML_VALUE));
+        filter.filter(exchange, chain).block();
+        return exchange.getResponse().getBodyAsString().block();
+    }
+}
@@ -1,9 +1,14 @@
 package org.javaprojects.onlinestore.services;
 
 import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import org.javaprojects.onlinestore.entities.Cart;
 import org.javaprojects.onlinestore.entities.Item;
+import org.javaprojects.onlinestore.enums.Sorting;
 import org.javaprojects.onlinestore.helpers.DummyOauth2TestConfiguration;
 import org.javaprojects.onlinestore.helpers.RedisTestContainer;
+import org.javaprojects.onlinestore.models.CatalogQuery;
+import org.javaprojects.onlinestore.models.ItemModel;
+import org.javaprojects.onlinestore.repositories.CartRepository;
 import org.javaprojects.onlinestore.repositories.ItemsRepository;
 import org.javaprojects.onlinestore.security.AuthUser;
 import org.javaprojects.onlinestore.helpers.WithAuthUser;
@@ -16,19 +21,34 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.ReactiveSecurityContextHolder;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.*;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 @ActiveProfiles("test")
 @SpringBootTest
@@ -43,6 +63,27 @@ class CatalogServiceTest extends RedisTestContainer
     @Autowired
     private CatalogService catalogService;
 
+    @Autowired
+    private CatalogWarmer catalogWarmer;
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    private CartFlusher cartFlusher;
+
+    @Autowired
+    private CartKeyMigration cartKeyMigration;
+
+    @MockitoSpyBean
+    private CacheLoader cacheLoader;
+
+    @Autowired
+    private ItemNearCache nearCache;
+
+    @Autowired
+    private ReactiveRedisTemplate<String, String> redis;
+
     @RegisterExtension
     static WireMockExtension wireMockServer = WireMockExtension.newInstance()
         .options(wireMockConfig()
@@ -81,6 +122,116 @@ class CatalogServiceTest extends RedisTestContainer
         assertEquals(1199.50, item.getPrice().doubleValue());
     }
 
+    @Test
+    void findAllItemsBySearchTerm() {
+        // before the warm-up the search is served from the database and leaves no result set in Redis
+        redis.delete("catalog:warm", "search:laptop").block();
+        List<ItemModel> cold = catalogService.findAllItems(0, 10, "Laptop", Sorting.PRICE)
+            .collectList()
+            .block();
+        assertNotNull(cold);
+        assertEquals(1, cold.size());
+        assertEquals("Laptop", cold.get(0).getTitle());
+        assertFalse(redis.hasKey("search:laptop").block());
+
+        // after the warm-up the same search is served from the term index
+        catalogWarmer.warmUp().block();
+        List<ItemModel> warm = catalogService.findAllItems(0, 10, "Laptop", Sorting.PRICE)
+            .collectList()
+            .block();
+        assertNotNull(warm);
+        assertEquals(1, warm.size());
+        assertEquals("Laptop", warm.get(0).getTitle());
+        assertTrue(redis.hasKey("search:laptop").block());
+    }
+
+    @Test
+    void searchBeforeWarmUpIsServedFromTheDatabase() {
+        // the term index holds only the items read so far, the search and its count must not be cut short by it
+        redis.delete("catalog:warm", "search:with").block();
+        catalogService.getItemById(1L).block();
+        Long expected = itemsRepository.countByFullText("with", null, null).block();
+
+        List<ItemModel> items = catalogService.findAllItems(0, 50, "with", Sorting.PRICE)
+            .collectList()
+            .block();
+        Long count = catalogService.getItemsCount("with").block();
+
+        assertNotNull(expected);
+        assertTrue(expected > 1);
+        assertNotNull(items);
+        assertEquals(expected.longValue(), items.size());
+        assertEquals(expected, count);
+        assertFalse(redis.hasKey("search:with").block());
+    }
+
+    @Test
+    void findPageByPriceRange() {
+        catalogWarmer.warmUp().block();
+        BigDecimal min = BigDecimal.valueOf(200);
+        BigDecimal max = BigDecimal.valueOf(700);
+        CatalogQuery query = new CatalogQuery("", Sorting.PRICE_DESC, 10, 0, null, min, max);
+
+        List<ItemModel> items = catalogService.findPage(query)
+            .flatMapMany(page -> catalogService.findAllItems(page.ids()))
+            .collectList()
+            .block();
+
+        assertNotNull(items);
+        assertFalse(items.isEmpty());
+        for (int i = 0; i < items.size(); i++) {
+            BigDecimal price = items.get(i).getPrice();
+            assertTrue(price.compareTo(min) >= 0 && price.compareTo(max) <= 0);
+            if (i > 0) {
+                assertTrue(items.get(i - 1).getPrice().compareTo(price) >= 0);
+            }
+        }
+    }
+
+    @Test
+    void findPageByPriceRangeBeforeWarmUp() {
+        // without the warm-up the price index misses items, the filtered page and its count come from the database
+        redis.delete("catalog:warm", "z:price").block();
+        catalogService.getItemById(3L).block();
+        BigDecimal min = BigDecimal.valueOf(200);
+        BigDecimal max = BigDecimal.valueOf(700);
+        CatalogQuery query = new CatalogQuery("", Sorting.PRICE, 50, 0, null, min, max);
+        Long expected = itemsRepository.countByPriceRange(min, max).block();
+
+        List<ItemModel> items = catalogService.findPage(query)
+            .flatMapMany(page -> catalogService.findAllItems(page.ids()))
+            .collectList()
+            .block();
+        Long count = catalogService.getItemsCount(query).block();
+
+        assertNotNull(expected);
+        assertTrue(expected > 1);
+        assertNotNull(items);
+        assertEquals(expected.longValue(), items.size());
+        assertEquals(expected, count);
+    }
+
+    @Test
+    void getItemsCount() {
+        assertEquals(itemsRepository.count().block(), catalogService.getItemsCount().block());
+    }
+
+    @Test
+    void getItemByUnknownId() {
+        // the first lookup misses the database and leaves a tombstone
+        String tombstone = "missing:item:" + Long.MAX_VALUE;
+        redis.delete(tombstone).block();
+        IllegalStateException cold = assertThrows(IllegalStateException.class,
+            () -> catalogService.getItemById(Long.MAX_VALUE).block());
+        assertTrue(cold.getMessage().contains("Item not found by id"));
+        assertTrue(redis.hasKey(tombstone).block());
+
+        // the second lookup is rejected by the tombstone with the same error
+        IllegalStateException cached = assertThrows(IllegalStateException.class,
+            () -> catalogService.getItemById(Long.MAX_VALUE).block());
+        assertTrue(cached.getMessage().contains("Item not found by id"));
+    }
+
     @Test
     void buyItemsInBasket() {
         wireMockServer.stubFor(get(urlPathEqualTo("/balance"))
@@ -128,6 +279,235 @@ class CatalogServiceTest extends RedisTestContainer
 
     }
 
+    @Test
+    void cartChangesAreFlushed() {
+        // clicks only change Redis, the cart table is written by the flusher
+        long quantity = getCurrentUser()
+            .flatMap(authUser -> catalogService.deleteItemFromBasket(3L, authUser)
+                .then(catalogService.incrementQuantity(3L, authUser))
+                .then(catalogService.incrementQuantity(3L, authUser))
+                .then(catalogService.incrementQuantity(3L, authUser))
+                .then(catalogService.decrementQuantity(3L, authUser))
+                .then(cartFlusher.flushUser(authUser.getId()))
+                .thenMany(cartRepository.findByUserId(authUser.getId()))
+                .filter(cart -> cart.getItemId() == 3L)
+                .next())
+            .map(Cart::getQuantity)
+            .blockOptional()
+            .orElse(0L);
+        assertEquals(2, quantity);
+
+        Long count = catalogService.getItemById(3L).map(ItemModel::getCount).block();
+        assertEquals(2, count);
+    }
+
+    @Test
+    void decrementStopsAtZero() {
+        // concurrent clicks below zero are clamped by the cart script
+        getCurrentUser()
+            .flatMap(authUser -> catalogService.deleteItemFromBasket(4L, authUser)
+                .then(catalogService.incrementQuantity(4L, authUser))
+                .then(Flux.range(0, 5)
+                    .flatMap(i -> catalogService.decrementQuantity(4L, authUser))
+                    .then())
+                .then(catalogService.incrementQuantity(4L, authUser)))
+            .block();
+
+        Long count = catalogService.getItemById(4L).map(ItemModel::getCount).block();
+        assertEquals(1, count);
+    }
+
+    @Test
+    void oldCartKeysAreMigrated() {
+        // a quantity left in the count:itemId:userId layout shows up in the cart hash
+        getCurrentUser()
+            .flatMap(authUser -> redis.opsForValue().set("count:5:" + authUser.getId(), "3"))
+            .then(cartKeyMigration.migrate())
+            .block();
+
+        Long count = catalogService.getItemById(5L).map(ItemModel::getCount).block();
+        assertEquals(3, count);
+        assertEquals(0L, redis.keys("count:*").count().block());
+    }
+
+    @Test
+    void usersHoldTheSameItem() {
+        // the cart is keyed by user and item, a zero quantity deletes only the row of its user
+        cartRepository.saveQuantities(new Long[] {1L, 2L}, new Long[] {2L, 2L}, new Long[] {1L, 4L})
+            .then(cartRepository.saveQuantities(new Long[] {1L}, new Long[] {2L}, new Long[] {0L}))
+            .block();
+
+        assertNull(cartRepository.findByUserId(1L).filter(row -> row.getItemId() == 2L).blockFirst());
+        Cart cart = cartRepository.findByUserId(2L).filter(row -> row.getItemId() == 2L).blockFirst();
+        assertNotNull(cart);
+        assertEquals(4, cart.getQuantity());
+    }
+
+    @Test
+    void cartEvictedAfterLoadIsLoadedAgain() {
+        // the cart hash disappears right after it is loaded, the click loads it once more instead of failing
+        AuthUser authUser = new AuthUser(1L, "test", "pwd", true, List.of("ROLE_USER"));
+        cartRepository.saveQuantities(new Long[] {1L}, new Long[] {2L}, new Long[] {0L})
+            .then(redis.delete("cart:{1}", "cart:{1}:dirty"))
+            .then(redis.opsForSet().remove("cart:dirty:users", "1"))
+            .block();
+        AtomicInteger loads = new AtomicInteger();
+        doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            Mono<Map<Long, Long>> load = (Mono<Map<Long, Long>>) invocation.callRealMethod();
+            return loads.getAndIncrement() == 0
+                ? load.flatMap(cart -> redis.delete("cart:{1}").thenReturn(cart))
+                : load;
+        }).when(cacheLoader).loadCartIntoCache(anyLong());
+
+        catalogService.incrementQuantity(2L, authUser).block();
+
+        assertEquals(2, loads.get());
+        assertEquals("1", redis.<String, String>opsForHash().get("cart:{1}", "2").block());
+        assertEquals(Boolean.TRUE, redis.opsForSet().isMember("cart:dirty:users", "1").block());
+    }
+
+    @Test
+    void cartThatCannotBeLoadedFails() {
+        // a cart hash evicted after every load ends the retries with an explicit error
+        AuthUser authUser = new AuthUser(1L, "test", "pwd", true, List.of("ROLE_USER"));
+        redis.delete("cart:{1}").block();
+        doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            Mono<Map<Long, Long>> load = (Mono<Map<Long, Long>>) invocation.callRealMethod();
+            return load.flatMap(cart -> redis.delete("cart:{1}").thenReturn(cart));
+        }).when(cacheLoader).loadCartIntoCache(anyLong());
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+            () -> catalogService.incrementQuantity(2L, authUser).block());
+        assertTrue(e.getMessage().contains("Cart could not be loaded"));
+    }
+
+    @Test
+    void interleavedFlushesKeepTheNewestQuantity() throws InterruptedException {
+        // a flush of another instance reads quantity 1 and stalls in its write while the user changes it to 2,
+        // the flush of this instance must wait for it instead of persisting 2 before the late write of 1
+        AuthUser authUser = new AuthUser(1L, "test", "pwd", true, List.of("ROLE_USER"));
+        catalogService.deleteItemFromBasket(3L, authUser)
+            .then(catalogService.incrementQuantity(3L, authUser))
+            .block();
+        Sinks.Empty<Void> gate = Sinks.empty();
+        CountDownLatch reading = new CountDownLatch(1);
+        CartRepository slowRepository = mock(CartRepository.class);
+        when(slowRepository.saveQuantities(any(), any(), any())).thenAnswer(invocation -> {
+            reading.countDown();
+            return gate.asMono().then(cartRepository.saveQuantities(
+                invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2)));
+        });
+        CartFlusher otherInstance = new CartFlusher(redis, slowRepository, false, Duration.ofSeconds(1), 200, 1000,
+            Duration.ofSeconds(30));
+
+        Mono<Void> slow = otherInstance.flushUser(1L).cache();
+        slow.subscribe();
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+        catalogService.incrementQuantity(3L, authUser).block();
+        Mono<Void> fast = cartFlusher.flushUser(1L).cache();
+        fast.subscribe();
+        gate.tryEmitEmpty();
+        slow.block(Duration.ofSeconds(5));
+        fast.block(Duration.ofSeconds(5));
+
+        Cart cart = cartRepository.findByUserId(1L).filter(row -> row.getItemId() == 3L).blockFirst();
+        assertNotNull(cart);
+        assertEquals(2, cart.getQuantity());
+    }
+
+    @Test
+    void warmUpRemovesChangesMissedByTheListener() {
+        // the change listener is disabled in tests, so the rename and the delete below are missed like during a disconnect
+        Item renamed = itemsRepository.insertItem("Tripod", "Aluminium tripod for travel cameras.",
+            BigDecimal.valueOf(89.90), "/images/tripod.jpg").block();
+        Item deleted = itemsRepository.insertItem("Monopod", "Carbon monopod for sports photography.",
+            BigDecimal.valueOf(59.90), "/images/monopod.jpg").block();
+        assertNotNull(renamed);
+        assertNotNull(deleted);
+        catalogWarmer.warmUp().block();
+        String renamedId = String.valueOf(renamed.getId());
+        String deletedId = String.valueOf(deleted.getId());
+        assertTrue(redis.opsForSet().isMember("idx:term:tripod", renamedId).block());
+        assertTrue(redis.opsForSet().isMember("idx:term:monopod", deletedId).block());
+
+        renamed.setTitle("Gimbal");
+        renamed.setDescription("Three-axis gimbal for travel cameras.");
+        itemsRepository.save(renamed).block();
+        itemsRepository.deleteByIds(List.of(deleted.getId())).blockLast();
+        catalogWarmer.warmUp().block();
+
+        assertEquals("Gimbal", redis.<String, String>opsForHash().get("item:" + renamedId, "title").block());
+        assertFalse(redis.opsForSet().isMember("idx:term:tripod", renamedId).block());
+        assertTrue(redis.opsForSet().isMember("idx:term:gimbal", renamedId).block());
+        assertNull(redis.opsForZSet().score("z:title", "Tripod|" + renamedId).block());
+
+        assertFalse(redis.hasKey("item:" + deletedId).block());
+        assertFalse(redis.opsForSet().isMember("idx:term:monopod", deletedId).block());
+        assertNull(redis.opsForZSet().score("z:new", deletedId).block());
+        assertNull(redis.opsForZSet().score("z:price", deletedId).block());
+        assertNull(redis.opsForZSet().score("z:title", "Monopod|" + deletedId).block());
+        assertEquals(itemsRepository.count().block(), catalogService.getItemsCount().block());
+    }
+
+    @Test
+    void nearCacheIsInvalidatedOverTheChannel() throws InterruptedException {
+        // the messages are published like by another instance, so only the subscription can drop the local copies
+        catalogService.getItemById(1L).block();
+        catalogService.getItemById(2L).block();
+        assertNotNull(nearCache.get(1L));
+        assertNotNull(nearCache.get(2L));
+
+        assertTrue(publishUntil("catalog:invalidate", "1", () -> nearCache.get(1L) == null));
+        assertNotNull(nearCache.get(2L));
+
+        catalogService.getItemById(1L).block();
+        assertTrue(publishUntil("catalog:invalidate", "*", () -> nearCache.get(1L) == null && nearCache.get(2L) == null));
+    }
+
+    @Test
+    void concurrentItemLoadsShareOneQuery() {
+        // two instances with the lease enabled, each receiving several concurrent lookups of an item missing from Redis
+        AtomicInteger queries = new AtomicInteger();
+        Item item = itemsRepository.findById(1L).block();
+        ItemsRepository slowRepository = mock(ItemsRepository.class);
+        when(slowRepository.findById(1L)).thenAnswer(invocation -> {
+            queries.incrementAndGet();
+            return Mono.just(item).delayElement(Duration.ofMillis(300));
+        });
+        CacheLoader first = new CacheLoader(redis, slowRepository, cartRepository, nearCache,
+            true, Duration.ofSeconds(5), Duration.ofMinutes(1));
+        CacheLoader second = new CacheLoader(redis, slowRepository, cartRepository, nearCache,
+            true, Duration.ofSeconds(5), Duration.ofMinutes(1));
+        redis.delete("item:1", "lease:item:1", "missing:item:1").block();
+
+        List<Map<String, String>> loaded = Flux.range(0, 10)
+            .flatMap(i -> (i % 2 == 0 ? first : second).loadItem(1L))
+            .collectList()
+            .block();
+
+        assertNotNull(loaded);
+        assertEquals(10, loaded.size());
+        assertTrue(loaded.stream().allMatch(map -> "Smartphone".equals(map.get("title"))));
+        assertEquals(1, queries.get());
+        assertFalse(redis.hasKey("lease:item:1").block());
+    }
+
+    /**
+     * Publishes the message until the condition holds, the subscription may not be established yet when the test starts.
+     */
+    private boolean publishUntil(String channel, String message, BooleanSupplier condition) throws InterruptedException {
+        for (int attempt = 0; attempt < 50; attempt++) {
+            redis.convertAndSend(channel, message).block();
+            Thread.sleep(100);
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private Mono<AuthUser> getCurrentUser() {
         return ReactiveSecurityContextHolder.getContext()
             .flatMap(ctx -> Mono.justOrEmpty(ctx.getAuthentication()))